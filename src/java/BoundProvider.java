@@ -0,0 +1,38 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+// Upper bounds for pruning the exact search. A node of the search tree with
+// positions pos and index j stands for the sets that keep the suffix
+// pos[ j+1.. ] and replace pos[ 0..j ] with j+1 items that come before
+// pos[ j+1 ]. Items are sorted by sum, so these are the sets the search may
+// still reach from the node.
+//
+// Providers are built once per search and shared by the threads of the
+// parallel algorithm, so bound must be thread safe. The bound may depend
+// on the suffix only, ExactSkyline memoizes it by suffix.
+public interface BoundProvider
+{
+    // Returns an upper bound of submodularFnc over the sets that consist of
+    // pos[ from.. ] and from items before pos[ from ]. suffixValue is
+    // submodularFnc( pos[ from.. ] ).
+    public double bound( int[] pos, int from, double suffixValue );
+}
@@ -0,0 +1,433 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// A directed graph with out-edges in CSR format: the out-edges of vertex v are
+// target[ offset[v] .. offset[v+1]-1 ]. Vertices are numbered 0..n-1 in order
+// of first appearance in the edge list, and name[v] is the id of v in the
+// input. Every edge has an influence probability, either a common edgeProb
+// or prob[l] for edge l.
+//
+// Graphs are read either from a text edge list (two vertex ids per row, rows
+// starting with # are skipped) or from a binary file written by writeBinary,
+// which is memory-mapped instead of parsed. Convert a text edge list once with
+//
+//   java CSRGraph edges.txt edges.csr
+//
+// and pass edges.csr as the graph file afterwards.
+public class CSRGraph
+{
+    private static final long BINARY_MAGIC   = 0x534b594353524731L;
+    private static final int  BINARY_VERSION = 1;
+    private static final int  HEADER_SIZE    = 24;
+
+    private int          numVertices;
+    private int          numEdges;
+    private IntBuffer    offset;
+    private IntBuffer    target;
+    private IntBuffer    name;
+    private DoubleBuffer prob;     // null if all edges have edgeProb
+    private double       edgeProb;
+
+    private CSRGraph() { }
+
+    // Loads the graph in graphFn, mapping it if it is in the binary format.
+    // Every edge gets probability edgeProb.
+    public static CSRGraph load( String graphFn, double edgeProb )
+        throws IOException
+    {
+        long begTime = System.nanoTime();
+        CSRGraph g = isBinary( graphFn ) ? mapBinary( graphFn ) : readEdgelist( graphFn );
+        g.edgeProb = edgeProb;
+        System.err.printf( "CSRGraph: loaded %d vertices and %d edges in %.3f sec.\n",
+                           g.numVertices, g.numEdges, (System.nanoTime() - begTime)/1000000000.0 );
+        return g;
+    }
+
+    // Constructs a graph from row, column, weight triplets. The weights
+    // are the influence probabilities of the edges.
+    public static CSRGraph fromTriplets( int[] i, int[] j, double[] w )
+    {
+        EdgeBuilder b = new EdgeBuilder();
+        for ( int r = 0; r < i.length; r++ ) {
+            b.add( i[r], j[r] );
+        }
+        CSRGraph g = b.build();
+        // edges were added in triplet order, so permute w like the targets
+        double[] p = new double[ w.length ];
+        for ( int r = 0; r < w.length; r++ ) {
+            p[ b.edgePos[r] ] = w[r];
+        }
+        g.prob = DoubleBuffer.wrap( p );
+        return g;
+    }
+
+    public int numVertices()
+    {
+        return this.numVertices;
+    }
+
+    public int numEdges()
+    {
+        return this.numEdges;
+    }
+
+    // Out-edges of v are begin(v) .. end(v)-1.
+    public int begin( int v )
+    {
+        return this.offset.get( v );
+    }
+
+    public int end( int v )
+    {
+        return this.offset.get( v+1 );
+    }
+
+    public int target( int l )
+    {
+        return this.target.get( l );
+    }
+
+    public double prob( int l )
+    {
+        return this.prob == null ? this.edgeProb : this.prob.get( l );
+    }
+
+    public int vertexName( int v )
+    {
+        return this.name.get( v );
+    }
+
+    // Writes the graph in the binary format: a header with a magic number,
+    // version, n and m, followed by offset[n+1], target[m] and name[n] as
+    // little endian ints. Probabilities are not stored, they are given
+    // when the graph is loaded.
+    public void writeBinary( String binFn )
+        throws IOException
+    {
+        File binFile = new File( binFn ).getAbsoluteFile();
+        File tmp = File.createTempFile( "graph", ".tmp", binFile.getParentFile() );
+        try ( FileChannel ch = FileChannel.open( tmp.toPath(), StandardOpenOption.WRITE ) ) {
+            ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+            header.putLong( BINARY_MAGIC );
+            header.putInt( BINARY_VERSION );
+            header.putInt( this.numVertices );
+            header.putLong( this.numEdges );
+            header.flip();
+            writeFully( ch, header );
+            writeInts( ch, this.offset );
+            writeInts( ch, this.target );
+            writeInts( ch, this.name );
+        }
+        Files.move( tmp.toPath(), binFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private static void writeInts( FileChannel ch, IntBuffer ints )
+        throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.allocate( 1 << 20 ).order( ByteOrder.LITTLE_ENDIAN );
+        IntBuffer src = ints.duplicate().clear();
+        while ( src.hasRemaining() ) {
+            bb.clear();
+            while ( src.hasRemaining() && bb.remaining() >= 4 ) {
+                bb.putInt( src.get() );
+            }
+            bb.flip();
+            writeFully( ch, bb );
+        }
+    }
+
+    private static void writeFully( FileChannel ch, ByteBuffer bb )
+        throws IOException
+    {
+        while ( bb.hasRemaining() ) {
+            ch.write( bb );
+        }
+    }
+
+    private static boolean isBinary( String graphFn )
+        throws IOException
+    {
+        try ( FileChannel ch = FileChannel.open( new File( graphFn ).toPath(), StandardOpenOption.READ ) ) {
+            if ( ch.size() < HEADER_SIZE ) {
+                return false;
+            }
+            ByteBuffer bb = ByteBuffer.allocate( 8 ).order( ByteOrder.LITTLE_ENDIAN );
+            while ( bb.hasRemaining() && ch.read( bb ) >= 0 ) { }
+            bb.flip();
+            return bb.getLong() == BINARY_MAGIC;
+        }
+    }
+
+    // Every section is mapped separately, so that no single mapping
+    // has to be larger than 2GB.
+    private static CSRGraph mapBinary( String binFn )
+        throws IOException
+    {
+        try ( FileChannel ch = FileChannel.open( new File( binFn ).toPath(), StandardOpenOption.READ ) ) {
+            ByteBuffer header = ch.map( FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE );
+            header.order( ByteOrder.LITTLE_ENDIAN );
+            header.getLong(); // magic, checked in isBinary
+            int version = header.getInt();
+            if ( version != BINARY_VERSION ) {
+                throw new IOException( String.format( "%s: unsupported graph file version %d",
+                                                      binFn, version ) );
+            }
+            CSRGraph g = new CSRGraph();
+            g.numVertices = header.getInt();
+            g.numEdges    = (int)header.getLong();
+            long pos = HEADER_SIZE;
+            g.offset = mapInts( ch, pos, g.numVertices+1 );
+            pos += 4L*(g.numVertices+1);
+            g.target = mapInts( ch, pos, g.numEdges );
+            pos += 4L*g.numEdges;
+            g.name   = mapInts( ch, pos, g.numVertices );
+            return g;
+        }
+    }
+
+    private static IntBuffer mapInts( FileChannel ch, long pos, int length )
+        throws IOException
+    {
+        ByteBuffer bb = ch.map( FileChannel.MapMode.READ_ONLY, pos, 4L*length );
+        return bb.order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+    }
+
+    // Parses the edge list directly from bytes. Only the first two ids of
+    // every row are used, the rest of the row is ignored.
+    private static CSRGraph readEdgelist( String graphFn )
+        throws IOException
+    {
+        EdgeBuilder b = new EdgeBuilder();
+        try ( InputStream in = new FileInputStream( graphFn ) ) {
+            byte[] buf    = new byte[ 1 << 16 ];
+            int    len    = 0;
+            int    pos    = 0;
+            int    field  = 0;     // index of the field being parsed on this row
+            int    value  = 0;
+            int    sign   = 1;
+            boolean inNum = false;
+            boolean skip  = false; // rest of the row is ignored
+            int    u      = 0;
+            while ( true ) {
+                if ( pos == len ) {
+                    len = in.read( buf );
+                    pos = 0;
+                    if ( len <= 0 ) {
+                        break;
+                    }
+                }
+                byte c = buf[ pos++ ];
+                if ( c == '\n' || c == '\r' ) {
+                    if ( inNum && field == 1 ) {
+                        b.add( u, sign*value );
+                    }
+                    field = 0; inNum = false; skip = false; sign = 1;
+                }
+                else if ( skip ) {
+                    continue;
+                }
+                else if ( c >= '0' && c <= '9' ) {
+                    if ( !inNum ) {
+                        inNum = true;
+                        value = 0;
+                    }
+                    value = 10*value + (c - '0');
+                }
+                else if ( c == '-' && !inNum ) {
+                    inNum = true;
+                    value = 0;
+                    sign  = -1;
+                }
+                else if ( c == '#' && field == 0 && !inNum ) {
+                    skip = true;
+                }
+                else if ( inNum ) {
+                    // a number ends
+                    if ( field == 0 ) {
+                        u = sign*value;
+                    }
+                    else {
+                        b.add( u, sign*value );
+                        skip = true;
+                    }
+                    field++; inNum = false; sign = 1;
+                }
+            }
+            if ( inNum && field == 1 ) {
+                // last row without a newline
+                b.add( u, sign*value );
+            }
+        }
+        return b.build();
+    }
+
+    // Collects edges over vertex names and sorts them into CSR format. The
+    // order of the out-edges of a vertex is the order in which they were added.
+    private static class EdgeBuilder
+    {
+        private IntIntMap idmap = new IntIntMap();
+        private int[]     names = new int[ 1024 ];
+        private int[]     src   = new int[ 1024 ];
+        private int[]     dst   = new int[ 1024 ];
+        private int       numVertices = 0;
+        private int       numEdges    = 0;
+        private int[]     edgePos;  // position of every added edge in the CSR
+
+        public void add( int uname, int vname )
+        {
+            int u = vertexId( uname );
+            int v = vertexId( vname );
+            if ( this.numEdges == this.src.length ) {
+                this.src = Arrays.copyOf( this.src, 2*this.src.length );
+                this.dst = Arrays.copyOf( this.dst, 2*this.dst.length );
+            }
+            this.src[ this.numEdges ] = u;
+            this.dst[ this.numEdges ] = v;
+            this.numEdges++;
+        }
+
+        private int vertexId( int vname )
+        {
+            int id = this.idmap.get( vname );
+            if ( id < 0 ) {
+                id = this.numVertices++;
+                this.idmap.put( vname, id );
+                if ( id == this.names.length ) {
+                    this.names = Arrays.copyOf( this.names, 2*this.names.length );
+                }
+                this.names[ id ] = vname;
+            }
+            return id;
+        }
+
+        public CSRGraph build()
+        {
+            int n = this.numVertices;
+            int[] offset = new int[ n+1 ];
+            int[] target = new int[ this.numEdges ];
+            this.edgePos = new int[ this.numEdges ];
+            for ( int e = 0; e < this.numEdges; e++ ) {
+                offset[ this.src[e]+1 ]++;
+            }
+            for ( int v = 0; v < n; v++ ) {
+                offset[ v+1 ] += offset[ v ];
+            }
+            int[] fill = Arrays.copyOf( offset, n );
+            for ( int e = 0; e < this.numEdges; e++ ) {
+                int l = fill[ this.src[e] ]++;
+                target[ l ] = this.dst[ e ];
+                this.edgePos[ e ] = l;
+            }
+            CSRGraph g = new CSRGraph();
+            g.numVertices = n;
+            g.numEdges    = this.numEdges;
+            g.offset      = IntBuffer.wrap( offset );
+            g.target      = IntBuffer.wrap( target );
+            g.name        = IntBuffer.wrap( Arrays.copyOf( this.names, n ) );
+            return g;
+        }
+    }
+
+    // Open addressing hash map from int keys to non-negative int values.
+    private static class IntIntMap
+    {
+        private int[] keys = new int[ 1 << 10 ];
+        private int[] vals = new int[ 1 << 10 ];  // value+1, 0 marks an empty slot
+        private int   size = 0;
+
+        // Returns -1 if key is not in the map.
+        public int get( int key )
+        {
+            int mask = this.keys.length - 1;
+            for ( int s = hash( key ) & mask; this.vals[s] != 0; s = (s+1) & mask ) {
+                if ( this.keys[s] == key ) {
+                    return this.vals[s] - 1;
+                }
+            }
+            return -1;
+        }
+
+        public void put( int key, int value )
+        {
+            if ( 2*(this.size+1) > this.keys.length ) {
+                rehash();
+            }
+            int mask = this.keys.length - 1;
+            int s = hash( key ) & mask;
+            while ( this.vals[s] != 0 && this.keys[s] != key ) {
+                s = (s+1) & mask;
+            }
+            if ( this.vals[s] == 0 ) {
+                this.size++;
+            }
+            this.keys[s] = key;
+            this.vals[s] = value + 1;
+        }
+
+        private void rehash()
+        {
+            int[] oldKeys = this.keys;
+            int[] oldVals = this.vals;
+            this.keys = new int[ 2*oldKeys.length ];
+            this.vals = new int[ 2*oldVals.length ];
+            this.size = 0;
+            for ( int s = 0; s < oldKeys.length; s++ ) {
+                if ( oldVals[s] != 0 ) {
+                    put( oldKeys[s], oldVals[s] - 1 );
+                }
+            }
+        }
+
+        private static int hash( int key )
+        {
+            int h = key * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        if ( args.length != 2 ) {
+            System.err.println( "usage: java CSRGraph <edgelist> <binary graph>" );
+            System.exit( -1 );
+        }
+        CSRGraph g = load( args[0], 0.0 );
+        g.writeBinary( args[1] );
+        System.err.printf( "CSRGraph: wrote %s\n", args[1] );
+    }
+}
@@ -0,0 +1,171 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.Arrays;
+import java.util.Map;
+
+// Wraps an Evaluator and memoizes submodularFnc. Values of itemsets are kept
+// in a bounded ItemSetCache keyed by the sorted itemset, and values of single
+// items in an array. The cache is shared between threads, so it can be used
+// under ExactSkylineParallel, and it lives as long as the evaluator, so runs
+// that evaluate the same sets again (e.g., fastInit, or greedy with every
+// weight in ScalarizationSkyline) get them for free.
+//
+// The capacity of the cache is in bytes. An entry is charged for its key
+// and a fixed overhead for the map entry, the key object and the value.
+public class CachingEvaluator extends Evaluator
+{
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private Evaluator            eval;
+    private long                 capacity;
+    private ItemSetCache<Double> cache;
+    private double[]             singleton; // NaN if not evaluated yet
+
+    public CachingEvaluator( Evaluator eval, long capacity )
+    {
+        this.eval     = eval;
+        this.capacity = capacity;
+    }
+
+    public void init( Map<String,Object> options ) throws Exception
+    {
+        this.eval.init( options );
+        this.maxSum = this.eval.maxSum();
+        this.cache  = new ItemSetCache<Double>( this.capacity ) {
+                protected long weight( int[] items, Double value ) {
+                    return ENTRY_OVERHEAD_BYTES + 4L*items.length;
+                }
+            };
+        this.singleton = new double[ this.eval.numItems() ];
+        Arrays.fill( this.singleton, Double.NaN );
+    }
+
+    public int[] actualItems( int[] indexes )
+    {
+        return this.eval.actualItems( indexes );
+    }
+
+    public double sumFnc( int item )
+    {
+        return this.eval.sumFnc( item );
+    }
+
+    public double sumFnc( int[] itemset )
+    {
+        return this.eval.sumFnc( itemset );
+    }
+
+    public double submodularFnc( int item )
+    {
+        double value = this.singleton[ item ];
+        if ( Double.isNaN( value ) ) {
+            // Racing threads compute the same value, so this needs no lock.
+            value = this.eval.submodularFnc( item );
+            this.singleton[ item ] = value;
+        }
+        return value;
+    }
+
+    public double submodularFnc( int[] itemset )
+    {
+        // Single item arrays are cached here too, evaluators may compute
+        // them differently from submodularFnc( int ).
+        int[] key = canonical( itemset );
+        Double value = this.cache.get( key );
+        if ( value == null ) {
+            value = this.eval.submodularFnc( key );
+            this.cache.put( key, value );
+        }
+        return value;
+    }
+
+    // The misses are evaluated as one batch.
+    public double[] submodularFnc( int[][] itemsets )
+    {
+        double[] values = new double[ itemsets.length ];
+        int[][]  keys   = new int[ itemsets.length ][];
+        int[]    index  = new int[ itemsets.length ];
+        int      n      = 0;
+        for ( int i = 0; i < itemsets.length; i++ ) {
+            int[]  key   = canonical( itemsets[ i ] );
+            Double value = this.cache.get( key );
+            if ( value == null ) {
+                keys[ n ]  = key;
+                index[ n ] = i;
+                n++;
+            }
+            else {
+                values[ i ] = value;
+            }
+        }
+        if ( n > 0 ) {
+            double[] computed = this.eval.submodularFnc( Arrays.copyOf( keys, n ) );
+            for ( int j = 0; j < n; j++ ) {
+                values[ index[j] ] = computed[ j ];
+                this.cache.put( keys[ j ], computed[ j ] );
+            }
+        }
+        return values;
+    }
+
+    public int numItems()
+    {
+        return this.eval.numItems();
+    }
+
+    // Oracles are incremental already, they go to the evaluator directly.
+    public MarginalGainOracle openOracle( int[] base )
+    {
+        return this.eval.openOracle( base );
+    }
+
+    public void printStats()
+    {
+        this.eval.printStats();
+        System.err.printf( "cacheHits = %d, cacheMisses = %d\n",
+                           this.cache.hits(), this.cache.misses() );
+    }
+
+    // The stats of the evaluator count actual evaluations only.
+    public Map<String,String> getStats()
+    {
+        Map<String,String> stats = this.eval.getStats();
+        stats.put( "cacheHits", String.valueOf( this.cache.hits() ) );
+        stats.put( "cacheMisses", String.valueOf( this.cache.misses() ) );
+        stats.put( "cacheSize", String.valueOf( this.cache.size() ) );
+        return stats;
+    }
+
+    // Returns itemset if it is sorted, otherwise a sorted copy.
+    private static int[] canonical( int[] itemset )
+    {
+        for ( int i = 1; i < itemset.length; i++ ) {
+            if ( itemset[i-1] > itemset[i] ) {
+                int[] sorted = itemset.clone();
+                Arrays.sort( sorted );
+                return sorted;
+            }
+        }
+        return itemset;
+    }
+}
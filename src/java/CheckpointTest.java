@@ -0,0 +1,98 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks that resuming an exact search from a checkpoint only continues a
+// checkpoint of the same data. A checkpoint is written on a random set cover
+// instance, the sets are changed without changing their values, and the
+// search is resumed: it must start over and give the skyline of the new data.
+// Run with: java CheckpointTest
+public class CheckpointTest
+{
+    private static final int NUM_SETS  = 30;
+    private static final int UNIV_SIZE = 200;
+    private static final int K         = 3;
+
+    public static void main( String[] args ) throws Exception
+    {
+        Random   rnd    = new Random( 1 );
+        double[] values = new double[ NUM_SETS ];
+        int[]    scdata = new int[ NUM_SETS*UNIV_SIZE ];
+        for ( int i = 0; i < NUM_SETS; i++ ) {
+            values[ i ] = rnd.nextDouble();
+        }
+        for ( int j = 0; j < scdata.length; j++ ) {
+            scdata[ j ] = rnd.nextInt( 10 ) == 0 ? 1 : 0;
+        }
+        int[] changed = scdata.clone();
+        for ( int j = 0; j < changed.length; j += 3 ) {
+            changed[ j ] = 1 - changed[ j ];
+        }
+
+        File dir = Files.createTempDirectory( "checkpointtest" ).toFile();
+        File ck  = new File( dir, "ck" );
+        try {
+            double[] old     = run( values, scdata, ck, false );
+            double[] same    = run( values, scdata, ck, true );
+            double[] resumed = run( values, changed, ck, true );
+            double[] fresh   = run( values, changed, null, false );
+            check( "resume on the same data", Arrays.equals( old, same ) );
+            check( "the data changes the skyline", !Arrays.equals( old, fresh ) );
+            check( "resume on changed data starts over", Arrays.equals( resumed, fresh ) );
+        }
+        finally {
+            ck.delete();
+            dir.delete();
+        }
+        System.err.println( "CheckpointTest: ok" );
+    }
+
+    private static double[] run( double[] values, int[] scdata, File ck, boolean resume )
+        throws Exception
+    {
+        Skyline sl = new Skyline();
+        sl.setOption( "e", "setcover" );
+        sl.setOption( "a", "exact" );
+        sl.setOption( "values", values );
+        sl.setOption( "scdata", scdata );
+        sl.setOption( "univSize", String.valueOf( UNIV_SIZE ) );
+        sl.setOption( "numSets", String.valueOf( NUM_SETS ) );
+        if ( ck != null ) {
+            sl.setOption( "checkpoint", ck.getPath() );
+        }
+        if ( resume ) {
+            sl.setOption( "resume", "" );
+        }
+        return sl.run( K );
+    }
+
+    private static void check( String what, boolean ok )
+    {
+        if ( !ok ) {
+            throw new AssertionError( "CheckpointTest: failed: " + what );
+        }
+    }
+}
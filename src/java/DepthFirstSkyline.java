@@ -0,0 +1,160 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+// An exact algorithm that needs almost no frontier memory. It walks the
+// same search tree as ExactSkyline, but depth first, so it only keeps a
+// stack of O(k * depth) nodes instead of the border.
+//
+// Depth first the nodes do not come in sum order, so submBest can not be
+// a single value. It is a staircase of the points found so far, keyed by
+// sum, see ExactSkyline.SkylineStaircase. Pruning with it is safe, every
+// point in it is a real set. A point may be beaten later by one with a
+// smaller sum, so the points are filtered when the search ends.
+//
+// The search can also run in passes over sum ranges, option "passes".
+// Pass p covers the nodes whose sum is in the first p/passes of the range
+// of sums, so it starts with the skyline of the earlier passes and only
+// evaluates nodes new to it. Nodes of earlier passes are visited again for
+// their children, their bounds mostly come from the suffix memo. More
+// passes find good points earlier and prune more, at the cost of walking
+// the top of the tree again. One pass is usually fastest.
+public class DepthFirstSkyline extends ExactSkyline
+{
+    private int numPasses = 1;
+
+    public DepthFirstSkyline() {}
+
+    public void configure( Map<String,Object> config )
+    {
+        super.configure( config );
+        if ( config.containsKey( "passes" ) ) {
+            this.numPasses = Integer.parseInt( (String)config.get( "passes" ) );
+        }
+    }
+
+    public List<SkylinePoint> computeSkyline( int k, Evaluator eval )
+    {
+        SkylineStaircase   submBest = new SkylineStaircase( eval.maxSum(), false );
+        List<SkylinePoint> points   = new LinkedList<SkylinePoint>();
+        int                n        = eval.numItems();
+        double             first    = eval.sumFnc( Utils.range( k ) );
+        double             last     = eval.sumFnc( Utils.range( n-k, n ) );
+
+        // A sum before all others, and one after them.
+        double start = eval.maxSum() ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        double end   = -start;
+
+        openSearch( eval, k );
+        double from = start;
+        for ( int pass = 1; pass <= this.numPasses; pass++ ) {
+            double to = pass == this.numPasses ? end : first + (last - first)*pass/this.numPasses;
+            walk( k, eval, submBest, points, from, to, pass );
+            from = to;
+        }
+        closeSearch();
+        return filterSkyline( points, eval.maxSum() );
+    }
+
+    // Visits the nodes whose sum is up to to, and evaluates those whose
+    // sum is beyond from. Up to and beyond are in the order of the search,
+    // so they are reversed when larger sums come first.
+    private void walk( int                k,
+                       Evaluator          eval,
+                       SkylineStaircase   submBest,
+                       List<SkylinePoint> points,
+                       double             from,
+                       double             to,
+                       int                pass )
+    {
+        Deque<SearchTreeNode> stack        = new ArrayDeque<SearchTreeNode>();
+        SearchTreeNode[]      children     = new SearchTreeNode[ 2 ];
+        double[]              suffixValues = new double[ 2 ];
+        long                  visited      = 0;
+        long                  evaluated    = 0;
+        int                   maxStack     = 0;
+
+        stack.push( new SearchTreeNode( Utils.range( k ), k-1 ) );
+        while ( !stack.isEmpty() ) {
+            SearchTreeNode node = stack.pop();
+            double         sum  = node.sum( eval );
+            if ( submBest.before( to, sum ) ) {
+                continue;  // the children are not before to either
+            }
+            visited++;
+            if ( submBest.before( from, sum ) ) {
+                evaluated++;
+                double submValue = eval.submodularFnc( node.pos );
+                double sumValue  = eval.sumFnc( node.pos );
+                if ( submValue > submBest.value( sumValue ) ) {
+                    points.add( new SkylinePoint( eval.actualItems( node.pos ), sumValue, submValue ) );
+                    submBest.setValue( sumValue, submValue );
+                }
+            }
+            int      m      = node.children( eval, children );
+            double[] bounds = getBounds( children, m, eval, k, suffixValues );
+            // The child with the smaller sum goes on top of the stack.
+            if ( m == 2 && submBest.before( children[0].sum( eval ), children[1].sum( eval ) ) ) {
+                SearchTreeNode tmp = children[0];
+                children[0] = children[1];
+                children[1] = tmp;
+                double foo = bounds[0];
+                bounds[0]  = bounds[1];
+                bounds[1]  = foo;
+                foo             = suffixValues[0];
+                suffixValues[0] = suffixValues[1];
+                suffixValues[1] = foo;
+            }
+            for ( int i = 0; i < m; i++ ) {
+                if ( isPromising( children[i], bounds[i], suffixValues[i], eval, submBest, k ) ) {
+                    stack.push( children[i] );
+                }
+            }
+            maxStack = Math.max( maxStack, stack.size() );
+        }
+        updatePeakMemory();
+        System.err.printf( "DepthFirstSkyline: pass %d visited %d nodes, evaluated %d, max stack %d.\n",
+                           pass, visited, evaluated, maxStack );
+    }
+
+    // Drops the points beaten by a point of smaller sum found later. A point
+    // is kept only if it beats all points before it, as in ExactSkyline.
+    private List<SkylinePoint> filterSkyline( List<SkylinePoint> points, boolean maxSum )
+    {
+        Collections.sort( points, Utils.getSkylinePointComparator( maxSum ) );
+        List<SkylinePoint> skyline = new LinkedList<SkylinePoint>();
+        double             submMax = Double.NEGATIVE_INFINITY;
+        for ( SkylinePoint p : points ) {
+            if ( p.submodularValue() > submMax ) {
+                submMax = p.submodularValue();
+                skyline.add( p );
+            }
+        }
+        return skyline;
+    }
+}
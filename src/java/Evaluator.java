@@ -22,6 +22,7 @@
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class Evaluator
 {
@@ -29,12 +30,53 @@ public abstract class Evaluator
 
     protected int[] origItem = null;
 
-    protected int sumCalls  = 0;
-    protected int submCalls = 0;
+    // The counters are updated from every thread of the parallel skyline,
+    // LongAdder keeps them exact without contention.
+    protected final LongAdder sumCalls  = new LongAdder();
+    protected final LongAdder submCalls = new LongAdder();
+
+    // Latencies of submodularFnc by set size, kept if option "latency" is
+    // given. Timing every call costs two System.nanoTime calls, so it is off
+    // by default.
+    protected LatencyHistogram latency = null;
     
     public void init( Map<String,Object> options ) throws Exception
     {
         this.maxSum  = options.containsKey( "max" );
+        if ( options.containsKey( "latency" ) ) {
+            this.latency = new LatencyHistogram();
+        }
+    }
+
+    // Starts timing an evaluation, see stopTimer.
+    protected final long startTimer()
+    {
+        return this.latency == null ? 0L : System.nanoTime();
+    }
+
+    // Records the latency of evaluating count sets of size setSize, timed
+    // from start. The time is split evenly between the sets.
+    protected final void stopTimer( int setSize, int count, long start )
+    {
+        if ( this.latency != null && count > 0 ) {
+            long nanos = ( System.nanoTime() - start )/count;
+            for ( int i = 0; i < count; i++ ) {
+                this.latency.record( setSize, nanos );
+            }
+        }
+    }
+
+    // Same for a batch, the sets are itemsets[ index[i] ] for i < n, or the
+    // first n itemsets if index is null.
+    protected final void stopTimer( int[][] itemsets, int[] index, int n, long start )
+    {
+        if ( this.latency != null && n > 0 ) {
+            long nanos = ( System.nanoTime() - start )/n;
+            for ( int i = 0; i < n; i++ ) {
+                int[] itemset = itemsets[ index == null ? i : index[i] ];
+                this.latency.record( itemset.length, nanos );
+            }
+        }
     }
 
     public boolean maxSum()
@@ -61,16 +103,61 @@ public abstract class Evaluator
 
     public abstract int numItems();
 
+    // Evaluates submodularFnc for every itemset. Evaluators override this
+    // where they can evaluate all itemsets with one pass over their data,
+    // the default evaluates them one by one.
+    public double[] submodularFnc( int[][] itemsets )
+    {
+        double[] values = new double[ itemsets.length ];
+        for ( int i = 0; i < itemsets.length; i++ ) {
+            values[ i ] = submodularFnc( itemsets[i] );
+        }
+        return values;
+    }
+
+    // Opens an oracle for incremental evaluation of submodularFnc at base.
+    // Evaluators override this with a native implementation where they can,
+    // the default evaluates every extension from scratch.
+    public MarginalGainOracle openOracle( int[] base )
+    {
+        return new MarginalGainOracle.Recomputing( new SetFunction() {
+                public double value( int item ) {
+                    return submodularFnc( item );
+                }
+                public double value( int[] set ) {
+                    return submodularFnc( set );
+                }
+            }, base );
+    }
+
     public void printStats()
     {
-        System.err.printf( "sumCalls = %d, submCalls = %d\n", this.sumCalls, this.submCalls );
+        System.err.printf( "sumCalls = %d, submCalls = %d\n",
+                           this.sumCalls.sum(), this.submCalls.sum() );
+        if ( this.latency != null ) {
+            String[] summary = this.latency.summaries();
+            for ( int size = 0; size < summary.length; size++ ) {
+                if ( summary[ size ] != null ) {
+                    System.err.printf( "submodularFnc latency, size %d: %s\n", size, summary[size] );
+                }
+            }
+        }
     }
     
     public Map<String,String> getStats()
     {
         Map<String,String> stats = new HashMap<>();
-        stats.put( "sumCalls", String.valueOf( this.sumCalls ) );
-        stats.put( "submCalls", String.valueOf( this.submCalls ) );
+        stats.put( "sumCalls", String.valueOf( this.sumCalls.sum() ) );
+        stats.put( "submCalls", String.valueOf( this.submCalls.sum() ) );
+        if ( this.latency != null ) {
+            // one entry per set size, e.g. submLatency3 = "n=... mean=..."
+            String[] summary = this.latency.summaries();
+            for ( int size = 0; size < summary.length; size++ ) {
+                if ( summary[ size ] != null ) {
+                    stats.put( "submLatency" + size, summary[ size ] );
+                }
+            }
+        }
         return stats;
     }
 }
@@ -20,17 +20,74 @@
 // OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
 // THE SOFTWARE.
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ExactSkyline extends SkylineAlg
 {
+    // Upper bound used in processChildNode, chosen with option "bound".
+    private String                  boundName      = "singleton";
+    private BoundProvider           bound          = null;
+
+    // Bounds of the suffixes in processChildNode. A suffix is shared by all
+    // nodes that differ only before it, so the same suffixes come up over
+    // and over. Every thread of the parallel algorithm has its own memo, so
+    // that lookups take no locks.
+    private int                     suffixMemoBits = 20;  // 2^bits entries, 0 for none
+    private ThreadLocal<SuffixMemo> suffixMemo     = null;
+
+    // Marginal gains learned during the search, they refine the bound of
+    // nodes that the provider lets through. Option "gains" sets the number
+    // of records per item, 0 turns learning off.
+    private int                     gainCapacity   = 64;
+    private MarginalGainStore       gainStore      = null;
+    private LongAdder               gainPruned     = new LongAdder();
+
+    // Memory budget of a border in bytes, 0 for none. Option "borderMem"
+    // sets it in megabytes, option "spillDir" the directory of the runs.
+    // Every thread of the parallel algorithm has a border of its own.
+    private long                    borderBudget   = 0L;
+    private File                    spillDir       = null;
+
+    // Checkpoints, see SearchCheckpoint. Option "checkpoint" is the file,
+    // the parallel algorithm adds the number of the interval to it. Option
+    // "checkpointEvery" is the least number of seconds between checkpoints,
+    // and option "resume" continues from the checkpoints that exist. A
+    // checkpoint of another search or one that cannot be read is ignored
+    // with a message, and that search starts over.
+    private String                  checkpointFile  = null;
+    private double                  checkpointEvery = 600.0;
+    private boolean                 resume          = false;
+    // Identify the data of the search in the checkpoint, see getCheckpoint.
+    private long                    inputId         = 0L;
+    private long                    singletonId     = 0L;
+
+    // Options that select the evaluator and its input. File options are
+    // identified by the name and the length of the file.
+    private static final String[] INPUT_OPTIONS = { "e", "q", "c", "g", "p", "s", "r", "seed", "max",
+                                                    "univSize", "numSets", "values", "scdata",
+                                                    "colPtr", "rowIdx" };
+
     public ExactSkyline() {}
     
     public List<SkylinePoint> computeSkyline( int k, Evaluator eval )
@@ -39,44 +96,238 @@ public class ExactSkyline extends SkylineAlg
         List<SearchTreeNode> beginGenerators = new LinkedList<SearchTreeNode>();
         beginGenerators.add( new SearchTreeNode( Utils.range(k), k-1 ) );
 
-        return computeSkylineInterval( k, eval,
-                                       getSubmBestObject( eval.maxSum() ),
-                                       beginGenerators,
-                                       new HashSet<SearchTreeNode>() );
+        openSearch( eval, k );
+        List<SkylinePoint> skyline = computeSkylineInterval( k, eval,
+                                                             getSubmBestObject( eval.maxSum() ),
+                                                             beginGenerators,
+                                                             new HashSet<SearchTreeNode>(),
+                                                             0 );
+        closeSearch();
+        return skyline;
     }
 
     public void configure( Map<String,Object> config ) {
-        return;
+        if ( config.containsKey( "smemo" ) ) {
+            this.suffixMemoBits = Integer.parseInt( (String)config.get( "smemo" ) );
+        }
+        if ( config.containsKey( "borderMem" ) ) {
+            this.borderBudget = Long.parseLong( (String)config.get( "borderMem" ) ) << 20;
+        }
+        if ( config.containsKey( "spillDir" ) ) {
+            this.spillDir = new File( (String)config.get( "spillDir" ) );
+        }
+        if ( config.containsKey( "checkpoint" ) ) {
+            this.checkpointFile = (String)config.get( "checkpoint" );
+        }
+        if ( config.containsKey( "checkpointEvery" ) ) {
+            this.checkpointEvery = Double.parseDouble( (String)config.get( "checkpointEvery" ) );
+        }
+        this.resume = config.containsKey( "resume" );
+        this.inputId = inputId( config );
+        if ( config.containsKey( "gains" ) ) {
+            this.gainCapacity = Integer.parseInt( (String)config.get( "gains" ) );
+        }
+        if ( config.containsKey( "bound" ) ) {
+            this.boundName = (String)config.get( "bound" );
+        }
     }
 
+    // Builds the bound provider, the gain store and the suffix memo of one
+    // search. They are shared by all intervals of the parallel algorithm.
+    protected void openSearch( Evaluator eval, int k )
+    {
+        if ( this.boundName.equals( "singleton" ) ) {
+            this.bound = new SingletonBound( eval, k );
+        }
+        else if ( this.boundName.equals( "pairwise" ) ) {
+            this.bound = new PairwiseBound( eval );
+        }
+        else {
+            throw new IllegalArgumentException( "ExactSkyline: unknown bound " + this.boundName );
+        }
+        this.gainStore = this.gainCapacity > 0 ? new MarginalGainStore( eval, this.gainCapacity ) : null;
+        this.gainPruned.reset();
+        if ( this.checkpointFile != null ) {
+            long id = 0L;
+            for ( int i = 0; i < eval.numItems(); i++ ) {
+                id = id*1000003 ^ Double.doubleToLongBits( eval.submodularFnc( i ) );
+            }
+            this.singletonId = id;
+        }
+        if ( this.suffixMemoBits <= 0 ) {
+            this.suffixMemo = null;
+            return;
+        }
+        final int bits     = this.suffixMemoBits;
+        final int numItems = eval.numItems();
+        this.suffixMemo = new ThreadLocal<SuffixMemo>() {
+                protected SuffixMemo initialValue() {
+                    return new SuffixMemo( bits, numItems );
+                }
+            };
+    }
+
+    protected void closeSearch()
+    {
+        if ( this.gainStore != null ) {
+            System.err.printf( "ExactSkyline: %d gains recorded, %d nodes pruned by them.\n",
+                               this.gainStore.numRecorded(), this.gainPruned.sum() );
+        }
+        this.bound      = null;
+        this.gainStore  = null;
+        this.suffixMemo = null;
+    }
+
+    // interval identifies the checkpoint, 0 for the whole search.
     protected List<SkylinePoint> computeSkylineInterval( int k,
                                                          Evaluator eval,
                                                          MutableDouble submBest,
                                                          List<SearchTreeNode> beginGenerators,
-                                                         Set<SearchTreeNode> endGenerators )
+                                                         Set<SearchTreeNode> endGenerators,
+                                                         int interval )
     {
         System.err.printf( "ExactSkyline: got %d begin and %d end generators.\n",
                            beginGenerators.size(), endGenerators.size() );
-        DoubleMatrix B = getPrefixBound( eval, k );
+
+        SearchCheckpoint checkpoint = getCheckpoint( eval, k, beginGenerators,
+                                                     endGenerators, interval );
 
         // The priority queue maintains a set of search tree nodes that we have not
         // expanded yet.
-        Border border = initBorder( eval, beginGenerators );
+        Border resumed = null;
+        long wereInQueue = 0;
+        List<SkylinePoint> resumedSkyline = null;
+        if ( checkpoint != null && this.resume && checkpoint.exists() ) {
+            Border b = new Border( eval, k, this.borderBudget, this.spillDir );
+            try ( DataInputStream in = checkpoint.open() ) {
+                wereInQueue    = in.readLong();
+                resumedSkyline = SearchCheckpoint.readSkyline( in );
+                b.read( in );
+                resumed = b;
+            }
+            catch ( IOException e ) {
+                // A checkpoint that does not belong to this search or cannot be
+                // read is ignored, it is overwritten by the first new checkpoint.
+                System.err.printf( "ExactSkyline: cannot resume from %s: %s, starting over.\n",
+                                   checkpoint.file(), e.getMessage() != null ? e.getMessage() : e );
+                wereInQueue = 0;
+            }
+        }
+        final Border border;
+        final List<SkylinePoint> skyline;
+        if ( resumed != null ) {
+            border  = resumed;
+            skyline = resumedSkyline;
+            for ( SkylinePoint p : skyline ) {
+                submBest.setValue( p.sumValue(), p.submodularValue() );
+            }
+            System.err.printf( "ExactSkyline: resumed with %d points and %d nodes after %d expanded.\n",
+                               skyline.size(), border.size(), wereInQueue );
+        }
+        else {
+            border  = initBorder( eval, beginGenerators, k );
+            skyline = new LinkedList<SkylinePoint>();
+        }
 
-        int wereInQueue = 0;
-        List<SkylinePoint> skyline = new LinkedList<SkylinePoint>();
+        SearchCheckpoint.Body body = new SearchCheckpoint.Body() {
+                public void write( DataOutputStream out ) throws IOException {
+                    border.write( out );
+                }
+            };
         while ( border.size() > 0 ) {
             wereInQueue++;
-            updateBorder( border, skyline, eval, B, submBest, endGenerators, k );
+            updateBorder( border, skyline, eval, submBest, endGenerators, k );
+            if ( checkpoint != null && (wereInQueue & 1023) == 0 && checkpoint.isDue() ) {
+                writeCheckpoint( checkpoint, wereInQueue, skyline, body );
+            }
+        }
+        // The final checkpoint has an empty border, resuming from it
+        // returns the skyline right away.
+        if ( checkpoint != null ) {
+            writeCheckpoint( checkpoint, wereInQueue, skyline, body );
         }
         System.err.println( "wereInQueue = " + wereInQueue );
         return skyline;
     }
 
+    // Returns the checkpoint of the interval, or null if there are none.
+    // The search is identified by the evaluator and its input options, the
+    // sum and singleton values of the items, k and the generators of the
+    // interval, so that a checkpoint is not resumed by another search or on
+    // other data. Evaluators that sample without a fixed seed get other
+    // singleton values on every run, so their searches always start over.
+    protected SearchCheckpoint getCheckpoint( Evaluator eval, int k,
+                                              List<SearchTreeNode> beginGenerators,
+                                              Set<SearchTreeNode> endGenerators,
+                                              int interval )
+    {
+        if ( this.checkpointFile == null ) {
+            return null;
+        }
+        long id = eval.numItems();
+        id = id*1000003 ^ this.inputId;
+        id = id*1000003 ^ this.singletonId;
+        id = id*1000003 ^ k;
+        id = id*1000003 ^ ( eval.maxSum() ? 1 : 0 );
+        for ( int i = 0; i < eval.numItems(); i++ ) {
+            id = id*1000003 ^ Double.doubleToLongBits( eval.sumFnc( i ) );
+        }
+        id = id*1000003 ^ beginGenerators.hashCode();
+        id = id*1000003 ^ endGenerators.hashCode();
+        return new SearchCheckpoint( checkpointFile( interval ), id, this.checkpointEvery );
+    }
+
+    private static long inputId( Map<String,Object> config )
+    {
+        long id = 0L;
+        for ( String name : INPUT_OPTIONS ) {
+            Object value = config.get( name );
+            id = id*1000003 ^ name.hashCode();
+            if ( value instanceof String ) {
+                id = id*1000003 ^ value.hashCode();
+                File file = new File( (String)value );
+                if ( file.isFile() ) {
+                    id = id*1000003 ^ file.length();
+                }
+            }
+            else if ( value instanceof double[] ) {
+                id = id*1000003 ^ Arrays.hashCode( (double[])value );
+            }
+            else if ( value instanceof int[] ) {
+                id = id*1000003 ^ Arrays.hashCode( (int[])value );
+            }
+            else if ( value != null ) {
+                id = id*1000003 ^ value.hashCode();
+            }
+        }
+        return id;
+    }
+
+    private File checkpointFile( int interval )
+    {
+        return new File( interval == 0 ? this.checkpointFile : this.checkpointFile + "." + interval );
+    }
+
+    protected boolean resumesFromCheckpoints()
+    {
+        return this.checkpointFile != null && this.resume;
+    }
+
+    private void writeCheckpoint( SearchCheckpoint checkpoint, long wereInQueue,
+                                  List<SkylinePoint> skyline, SearchCheckpoint.Body body )
+    {
+        try {
+            checkpoint.write( wereInQueue, skyline, body );
+        }
+        catch ( IOException e ) {
+            // A failed checkpoint does not stop the search.
+            System.err.printf( "ExactSkyline: checkpoint failed: %s\n", e.getMessage() );
+        }
+    }
+
     private void updateBorder( Border              border,
                                List<SkylinePoint>  skyline,
                                Evaluator           eval,
-                               DoubleMatrix        B,
                                MutableDouble       submBest,
                                Set<SearchTreeNode> endGenerators,
                                int                 k )
@@ -94,18 +345,28 @@ public class ExactSkyline extends SkylineAlg
         // Points from the previous skyline are identified by j = -1,
         // these should not be expanded further in the search tree.
         if ( node.j != -1 ) {
-            for ( SearchTreeNode next : node.children( eval ) ) {
-                if ( !endGenerators.contains( next ) ) {
-                    processChildNode( border, next, eval, B, submBest, k );
+            SearchTreeNode[] children = new SearchTreeNode[ 2 ];
+            int              n        = 0;
+            int              m        = node.children( eval, children );
+            for ( int i = 0; i < m; i++ ) {
+                if ( !endGenerators.contains( children[i] ) ) {
+                    children[ n++ ] = children[ i ];
                 }
             }
+            double[] suffixValues = new double[ n ];
+            double[] bounds       = getBounds( children, n, eval, k, suffixValues );
+            for ( int i = 0; i < n; i++ ) {
+                processChildNode( border, children[i], bounds[i], suffixValues[i],
+                                  eval, submBest, k );
+            }
         }
     }
 
     private Border initBorder( Evaluator eval,
-                               List<SearchTreeNode> beginGenerators )
+                               List<SearchTreeNode> beginGenerators,
+                               int k )
     {
-        Border border = new Border( 1<<16, getNodeComparator( eval ) );
+        Border border = new Border( eval, k, this.borderBudget, this.spillDir );
 
         for ( SearchTreeNode s : beginGenerators ) {
             border.add( s );
@@ -113,78 +374,115 @@ public class ExactSkyline extends SkylineAlg
         return border;
     }
 
-    private Comparator<SearchTreeNode> getNodeComparator( Evaluator eval )
+    // Returns the upper bound of every child and stores the values of
+    // their suffixes in suffixValues. Children with a suffix of less than two
+    // items are not bounded. Suffix values and bounds are memoized by suffix,
+    // and the suffixes of more than one item that miss the memo are
+    // evaluated as one batch.
+    protected double[] getBounds( SearchTreeNode[] children, int numChildren,
+                                  Evaluator eval, int k, double[] suffixValues )
     {
-        if ( eval.maxSum() ) {
-            return new Comparator<SearchTreeNode>() {
-                public int compare( SearchTreeNode a, SearchTreeNode b ) {
-                    return (int)Math.signum( eval.sumFnc(b.pos) - eval.sumFnc(a.pos) );
+        double[]   bounds   = new double[ numChildren ];
+        int[][]    suffixes = new int[ numChildren ][];
+        int[]      index    = new int[ numChildren ];
+        int        n        = 0;
+        SuffixMemo memo     = this.suffixMemo == null ? null : this.suffixMemo.get();
+        for ( int i = 0; i < numChildren; i++ ) {
+            SearchTreeNode next = children[ i ];
+            int            z    = k - next.j;
+            bounds[ i ] = Double.POSITIVE_INFINITY;
+            if ( z < 2 ) {
+                continue;
+            }
+            int slot = memo == null ? -1 : memo.find( next.pos, next.j+1 );
+            if ( slot >= 0 ) {
+                suffixValues[ i ] = memo.value( slot );
+                bounds[ i ]       = memo.bound( slot );
+            }
+            else if ( z == 2 ) {
+                suffixValues[ i ] = eval.submodularFnc( next.pos[ next.j+1 ] );
+                bounds[ i ]       = this.bound.bound( next.pos, next.j+1, suffixValues[i] );
+                if ( memo != null ) {
+                    memo.put( next.pos, next.j+1, suffixValues[i], bounds[i] );
                 }
-            };
+            }
+            else {
+                suffixes[ n ] = Utils.arraySuffix( next.pos, next.j+1 );
+                index[ n ]    = i;
+                n++;
+            }
         }
-        else {
-            return new Comparator<SearchTreeNode>() {
-                public int compare( SearchTreeNode a, SearchTreeNode b ) {
-                    return (int)Math.signum( eval.sumFnc(a.pos) - eval.sumFnc(b.pos) );
+        if ( n > 0 ) {
+            double[] values = eval.submodularFnc( Arrays.copyOf( suffixes, n ) );
+            for ( int j = 0; j < n; j++ ) {
+                SearchTreeNode next = children[ index[j] ];
+                suffixValues[ index[j] ] = values[ j ];
+                bounds[ index[j] ]       = this.bound.bound( next.pos, next.j+1, values[j] );
+                if ( memo != null ) {
+                    memo.put( next.pos, next.j+1, values[j], bounds[ index[j] ] );
                 }
-            };
+                learnGain( memo, suffixes[j], values[j] );
+            }
         }
+        return bounds;
     }
-    
+
+    // Records the gain of the first item of a freshly evaluated suffix over
+    // the rest of it, if the value of the rest is known. The rest is the
+    // suffix of the parent node, so it is usually still in the memo.
+    private void learnGain( SuffixMemo memo, int[] suffix, double value )
+    {
+        if ( this.gainStore == null ) {
+            return;
+        }
+        double restValue;
+        if ( suffix.length == 2 ) {
+            restValue = this.gainStore.single( suffix[1] );
+        }
+        else {
+            int slot = memo == null ? -1 : memo.find( suffix, 1 );
+            if ( slot < 0 ) {
+                return;
+            }
+            restValue = memo.value( slot );
+        }
+        this.gainStore.add( suffix[0], Utils.arraySuffix( suffix, 1 ), value - restValue );
+    }
+
     private void processChildNode( Border border,
                                    SearchTreeNode next,
+                                   double totalBound,
+                                   double suffixValue,
                                    Evaluator eval,
-                                   DoubleMatrix B,
                                    MutableDouble submBest,
                                    int k )
     {
-        double prefixBound = 0.0;
-        double suffixValue = 0.0;
-        double totalBound  = Double.POSITIVE_INFINITY;
-        int    z           = k - next.j;
-        if ( z >= 2 ) {
-            if ( z == 2 ) {
-                suffixValue = eval.submodularFnc( next.pos[ next.j+1 ] );
-            }
-            else {
-                suffixValue = eval.submodularFnc( Utils.arraySuffix( next.pos, next.j+1 ) );
-            }
-            prefixBound = B.get( next.pos[ next.j+1 ], next.j );
-            totalBound  = prefixBound + suffixValue;
-        }
-        if ( totalBound >= submBest.value( eval.sumFnc( next.pos ) ) ) {
+        if ( isPromising( next, totalBound, suffixValue, eval, submBest, k ) ) {
             border.add( next );
         }
     }
 
-    private double[] getSingletonValues( Evaluator eval ) {
-        double[] x = new double[ eval.numItems() ];
-        for ( int i = 0; i < x.length; i++ ) {
-            x[i] = eval.submodularFnc( i );
-        }
-        return x;
-    }
-
-    private DoubleMatrix getPrefixBound( Evaluator eval, int k )
+    // Returns false if no set in the subtree of next can beat submBest. The
+    // bound and the suffix value are those given by getBounds.
+    protected boolean isPromising( SearchTreeNode next,
+                                   double totalBound,
+                                   double suffixValue,
+                                   Evaluator eval,
+                                   MutableDouble submBest,
+                                   int k )
     {
-        double[]     tmp = getSingletonValues( eval );
-        DoubleMatrix B   = new DoubleMatrix( tmp.length, k-1 );
-        for ( int x = 1; x < tmp.length; x++ ) {
-            int j = x;
-            // This loop makes sure the (x+1)-length prefix of tmp
-            // is always sorted in decreasing order.
-            while ( j > 0 && tmp[j] > tmp[j-1] ) {
-                double foo = tmp[j];
-                tmp[j]     = tmp[j-1];
-                tmp[j-1]   = foo;
-                j--;
-            }
-            B.set( x, 0, tmp[0] );
-            for ( int i = 1; i < Math.min(x, k-1); i++ ) {
-                B.set( x, i, B.get( x, i-1 ) + tmp[i] );
-            }
+        double submThreshold = submBest.value( eval.sumFnc( next.pos ) );
+        if ( totalBound < submThreshold ) {
+            return false;
+        }
+        // The learned gains are only consulted when the bound of the
+        // provider does not prune, they cost more than a memo lookup.
+        if ( this.gainStore != null && k - next.j >= 2 &&
+             this.gainStore.bound( next.pos, next.j+1, suffixValue ) < submThreshold ) {
+            this.gainPruned.increment();
+            return false;
         }
-        return B;
+        return true;
     }
 
     protected MutableDouble getSubmBestObject( boolean maxSum )
@@ -214,11 +512,581 @@ public class ExactSkyline extends SkylineAlg
         }
     }
 
-    private class Border extends PriorityQueue<SearchTreeNode>
+    // The points found so far by sum, every point beats all points before it,
+    // so value( s ) is the best submodular value among the points whose sum
+    // comes at or before s. Engines that do not meet the nodes in sum order
+    // prune with it instead of a single value. The concurrent staircase is
+    // shared by the threads of the parallel algorithm, readers need no lock
+    // and writers are serialized. The time spent in setValue is recorded.
+    protected class SkylineStaircase extends MutableDouble
+    {
+        private final NavigableMap<Double,Double> skyline;
+        private final boolean                     maxSum;
+        private long                              time;
+
+        public SkylineStaircase( boolean maxSum, boolean concurrent )
+        {
+            Comparator<Double> cmp = null;
+            if ( maxSum ) {
+                cmp = new Comparator<Double>() {
+                        public int compare( Double a, Double b ) {
+                            return (int)Math.signum( b - a );
+                        }
+                    };
+            }
+            else {
+                cmp = new Comparator<Double>() {
+                        public int compare( Double a, Double b ) {
+                            return (int)Math.signum( a - b );
+                        }
+                    };
+            }
+            this.maxSum = maxSum;
+            if ( concurrent ) {
+                this.skyline = new ConcurrentSkipListMap<>( cmp );
+            }
+            else {
+                this.skyline = new TreeMap<>( cmp );
+            }
+            // make sure there is always something in the list.
+            // this should guarantee the floorEntry method always returns something
+            if ( maxSum ) {
+                this.skyline.put( Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY );
+            } else {
+                this.skyline.put( Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY );
+            }
+        }
+
+        // Returns true if a sum of a comes before a sum of b in the search.
+        public boolean before( double a, double b )
+        {
+            return this.maxSum ? a > b : a < b;
+        }
+
+        public double value( double sumValue )
+        {
+            return this.skyline.floorEntry( sumValue ).getValue();
+        }
+
+        public synchronized void setValue( double sumValue, double submValue )
+        {
+            long btime = System.nanoTime();
+            if ( value( sumValue ) > submValue ) {
+                return;
+            }
+            Iterator<Map.Entry<Double,Double>> it =
+                this.skyline.tailMap( sumValue, true ).entrySet().iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().getValue() <= submValue ) {
+                    it.remove();
+                }
+                else {
+                    break;
+                }
+            }
+            this.skyline.put( sumValue, submValue );
+            this.time += (System.nanoTime() - btime);
+        }
+
+        // Nanoseconds spent in setValue.
+        public synchronized long time()
+        {
+            return this.time;
+        }
+    }
+
+    // A direct-mapped table from suffixes to their values and bounds. A
+    // suffix is packed into a long key, its length and the items in fields
+    // wide enough for any item; suffixes that do not fit are not memoized.
+    // A new entry overwrites whatever was in its slot, so the table never
+    // grows and needs no eviction.
+    private static class SuffixMemo
     {
-        public Border( int size, Comparator<SearchTreeNode> cmp )
+        private final long[]   keys;
+        private final double[] values;
+        private final double[] bounds;
+        private final int      shift;
+        private final int      fieldBits;
+
+        public SuffixMemo( int bits, int numItems )
+        {
+            this.keys      = new long[ 1 << bits ];
+            this.values    = new double[ 1 << bits ];
+            this.bounds    = new double[ 1 << bits ];
+            this.shift     = 64 - bits;
+            this.fieldBits = 32 - Integer.numberOfLeadingZeros( numItems );
+        }
+
+        // Returns the slot of pos[ from.. ], or -1 if it is not known.
+        public int find( int[] pos, int from )
+        {
+            long key = key( pos, from );
+            if ( key == 0L ) {
+                return -1;
+            }
+            int slot = slot( key );
+            return this.keys[ slot ] == key ? slot : -1;
+        }
+
+        public double value( int slot )
+        {
+            return this.values[ slot ];
+        }
+
+        public double bound( int slot )
         {
-            super( size, cmp );
+            return this.bounds[ slot ];
+        }
+
+        public void put( int[] pos, int from, double value, double bound )
+        {
+            long key = key( pos, from );
+            if ( key != 0L ) {
+                int slot = slot( key );
+                this.keys[ slot ]   = key;
+                this.values[ slot ] = value;
+                this.bounds[ slot ] = bound;
+            }
         }
-    }  
+
+        // The length is shifted up by every item, so it ends up in the 6 bits
+        // above the item fields. A suffix that fits has length > 0 and thus a
+        // key that is never 0, 0 stands for a suffix that does not fit.
+        private long key( int[] pos, int from )
+        {
+            int length = pos.length - from;
+            if ( 6 + length*this.fieldBits > 64 ) {
+                return 0L;
+            }
+            long key = length;
+            for ( int i = from; i < pos.length; i++ ) {
+                key = ( key << this.fieldBits ) | pos[ i ];
+            }
+            return key;
+        }
+
+        private int slot( long key )
+        {
+            return (int)( (key * 0x9e3779b97f4a7c15L) >>> this.shift );
+        }
+    }
+
+    // The nodes to expand as a monotone radix heap keyed by their sum. The
+    // search pops nodes in monotone sum order, because items are sorted by
+    // sum and a child has a later item than its parent. Keys are the sums
+    // mapped to unsigned longs in pop order. Bucket 0 holds the keys equal to
+    // the last popped key, bucket b > 0 those whose highest bit differing from
+    // it is b-1. A pop that finds bucket 0 empty takes the smallest key of the
+    // first non-empty bucket as the new last key, and spreads that bucket to
+    // lower ones, so a node moves at most 64 times.
+    //
+    // The border can hold tens of millions of nodes, so they are not kept as
+    // objects. A bucket is a slab of longs, an entry is the key followed by
+    // the node packed into numWords words: j+1 and the items in fields of
+    // the same width, as many fields per word as fit. The sum of a popped
+    // node is recovered from its key. With up to 64k items and k = 3 an
+    // entry takes 16 bytes.
+    private class Border
+    {
+        // A mapping can not exceed 2GB, longer runs are mapped in chunks.
+        private static final long MAX_MAP_BYTES = 1L << 30;
+
+        private final Evaluator eval;
+        private final int       k;
+        private final int       fieldBits;
+        private final int       fieldsPerWord;
+        private final int       numWords;
+        private final int       stride;
+        private final long[][]  slab  = new long[ 65 ][];
+        private final int[]     count = new int[ 65 ];
+        private long            last  = 0L;
+        private long            size  = 0L;
+
+        private final long                    budget;
+        private final File                    spillDir;
+        private final PriorityQueue<SpillRun> runs;
+        private final long[]                  entry;
+        private long                          slabWords   = 0L;
+        private long                          memSize     = 0L;
+        private long                          memMin      = 0L;
+        private boolean                       memMinValid = false;
+
+        public Border( Evaluator eval, int k, long budget, File spillDir )
+        {
+            this.eval          = eval;
+            this.k             = k;
+            this.fieldBits     = 32 - Integer.numberOfLeadingZeros( Math.max( eval.numItems(), k+1 ) );
+            this.fieldsPerWord = 64 / this.fieldBits;
+            this.numWords      = ( k + 1 + this.fieldsPerWord - 1 ) / this.fieldsPerWord;
+            this.stride        = 1 + this.numWords;
+            for ( int b = 0; b < 65; b++ ) {
+                this.slab[ b ] = new long[ 16*this.stride ];
+                this.slabWords += this.slab[ b ].length;
+            }
+            this.budget   = budget;
+            this.spillDir = spillDir;
+            this.entry    = new long[ this.stride ];
+            this.runs     = new PriorityQueue<SpillRun>( 16, new Comparator<SpillRun>() {
+                    public int compare( SpillRun a, SpillRun b ) {
+                        return Long.compareUnsigned( a.head(), b.head() );
+                    }
+                } );
+        }
+
+        public long size()
+        {
+            return this.size;
+        }
+
+        public void add( SearchTreeNode node )
+        {
+            long key = key( node.sum( this.eval ) );
+            // An incrementally computed sum may round below the last key.
+            if ( Long.compareUnsigned( key, this.last ) < 0 ) {
+                key = this.last;
+            }
+            int    b = bucket( key );
+            long[] s = reserve( b );
+            int    e = this.count[ b ]++ * this.stride;
+            s[ e ] = key;
+            for ( int w = 0; w < this.numWords; w++ ) {
+                s[ e+1+w ] = 0L;
+            }
+            setField( s, e, 0, node.j+1 );
+            for ( int i = 0; i < this.k; i++ ) {
+                setField( s, e, i+1, node.pos[i] );
+            }
+            added( key );
+        }
+
+        // Adds a packed entry, its key must not be below the last key.
+        private void addEntry( long[] entry )
+        {
+            int    b = bucket( entry[0] );
+            long[] s = reserve( b );
+            System.arraycopy( entry, 0, s, this.count[ b ]++ * this.stride, this.stride );
+            added( entry[0] );
+        }
+
+        private void added( long key )
+        {
+            this.size++;
+            if ( this.memMinValid && Long.compareUnsigned( key, this.memMin ) < 0 ) {
+                this.memMin = key;
+            }
+            if ( this.memSize++ == 0 ) {
+                this.memMin      = key;
+                this.memMinValid = true;
+            }
+            if ( this.budget > 0 && 8*this.slabWords > this.budget ) {
+                spill();
+            }
+        }
+
+        public SearchTreeNode poll()
+        {
+            if ( this.size == 0 ) {
+                return null;
+            }
+            if ( !this.runs.isEmpty() &&
+                 ( this.memSize == 0 ||
+                   Long.compareUnsigned( this.runs.peek().head(), memMin() ) < 0 ) ) {
+                return pollRun();
+            }
+            if ( this.count[ 0 ] == 0 ) {
+                int b = 1;
+                while ( this.count[ b ] == 0 ) {
+                    b++;
+                }
+                long[] s   = this.slab[ b ];
+                int    c   = this.count[ b ];
+                long   min = s[ 0 ];
+                for ( int e = this.stride; e < c*this.stride; e += this.stride ) {
+                    if ( Long.compareUnsigned( s[e], min ) < 0 ) {
+                        min = s[ e ];
+                    }
+                }
+                this.last       = min;
+                this.count[ b ] = 0;
+                for ( int e = 0; e < c*this.stride; e += this.stride ) {
+                    int    to = bucket( s[e] );
+                    long[] d  = reserve( to );
+                    System.arraycopy( s, e, d, this.count[ to ]++ * this.stride, this.stride );
+                }
+                if ( this.budget > 0 ) {
+                    release( b );
+                }
+            }
+            long[] s   = this.slab[ 0 ];
+            int    e   = --this.count[ 0 ] * this.stride;
+            this.size--;
+            this.memSize--;
+            this.memMinValid = false;
+            return node( s, e );
+        }
+
+        // Writes the last key and all entries, in no particular order.
+        public void write( DataOutputStream out )
+            throws IOException
+        {
+            out.writeLong( this.last );
+            out.writeInt( this.stride );
+            out.writeLong( this.size );
+            for ( int b = 0; b < 65; b++ ) {
+                long[] s = this.slab[ b ];
+                for ( int e = 0; e < this.count[ b ]*this.stride; e++ ) {
+                    out.writeLong( s[ e ] );
+                }
+            }
+            for ( SpillRun run : this.runs ) {
+                run.write( out );
+            }
+        }
+
+        // Adds the entries written by write to an empty border.
+        public void read( DataInputStream in )
+            throws IOException
+        {
+            this.last = in.readLong();
+            if ( in.readInt() != this.stride ) {
+                throw new IOException( "Border: checkpoint has entries of another size" );
+            }
+            long n = in.readLong();
+            for ( long i = 0; i < n; i++ ) {
+                for ( int w = 0; w < this.stride; w++ ) {
+                    this.entry[ w ] = in.readLong();
+                }
+                addEntry( this.entry );
+            }
+        }
+
+        private SearchTreeNode pollRun()
+        {
+            SpillRun run = this.runs.poll();
+            run.copyHead( this.entry );
+            if ( run.advance() ) {
+                this.runs.add( run );
+            }
+            this.size--;
+            return node( this.entry, 0 );
+        }
+
+        private SearchTreeNode node( long[] s, int e )
+        {
+            int[] pos = new int[ this.k ];
+            for ( int i = 0; i < this.k; i++ ) {
+                pos[ i ] = getField( s, e, i+1 );
+            }
+            return new SearchTreeNode( pos, getField( s, e, 0 ) - 1, sum( s[e] ) );
+        }
+
+        // The smallest key in memory, memSize must be positive.
+        private long memMin()
+        {
+            if ( this.count[ 0 ] > 0 ) {
+                return this.last;
+            }
+            if ( !this.memMinValid ) {
+                int b = 1;
+                while ( this.count[ b ] == 0 ) {
+                    b++;
+                }
+                long[] s = this.slab[ b ];
+                this.memMin = s[ 0 ];
+                for ( int e = this.stride; e < this.count[ b ]*this.stride; e += this.stride ) {
+                    if ( Long.compareUnsigned( s[e], this.memMin ) < 0 ) {
+                        this.memMin = s[ e ];
+                    }
+                }
+                this.memMinValid = true;
+            }
+            return this.memMin;
+        }
+
+        // Writes buckets to runs, largest keys first, until half of the
+        // budget is free.
+        private void spill()
+        {
+            long spilled = 0L;
+            for ( int b = 64; b >= 0 && 8*this.slabWords > this.budget/2; b-- ) {
+                int c = this.count[ b ];
+                if ( c > 0 ) {
+                    sortEntries( this.slab[ b ], c );
+                    writeRuns( this.slab[ b ], c );
+                    this.count[ b ] = 0;
+                    this.memSize   -= c;
+                    spilled        += c;
+                }
+                release( b );
+            }
+            this.memMinValid = false;
+            System.err.printf( "ExactSkyline: spilled %d nodes, %d in memory, %d runs.\n",
+                               spilled, this.memSize, this.runs.size() );
+        }
+
+        private void writeRuns( long[] s, int c )
+        {
+            long chunk = MAX_MAP_BYTES / ( 8*this.stride );
+            try {
+                File file = File.createTempFile( "border", ".run", this.spillDir );
+                try ( FileChannel ch = FileChannel.open( file.toPath(),
+                                                         StandardOpenOption.READ,
+                                                         StandardOpenOption.WRITE ) ) {
+                    for ( int from = 0; from < c; from += chunk ) {
+                        int        n   = (int)Math.min( chunk, c - from );
+                        LongBuffer buf = ch.map( FileChannel.MapMode.READ_WRITE,
+                                                 8L*from*this.stride, 8L*n*this.stride )
+                            .order( ByteOrder.nativeOrder() ).asLongBuffer();
+                        buf.put( s, from*this.stride, n*this.stride );
+                        this.runs.add( new SpillRun( buf, n, this.stride ) );
+                    }
+                }
+                finally {
+                    // The mappings stay valid, the space is freed when they
+                    // are garbage collected.
+                    if ( !file.delete() ) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+            catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+
+        // Heapsorts the first c entries of s by key, in place.
+        private void sortEntries( long[] s, int c )
+        {
+            for ( int i = c/2 - 1; i >= 0; i-- ) {
+                siftDown( s, i, c );
+            }
+            for ( int n = c-1; n > 0; n-- ) {
+                swapEntries( s, 0, n );
+                siftDown( s, 0, n );
+            }
+        }
+
+        private void siftDown( long[] s, int i, int n )
+        {
+            while ( 2*i+1 < n ) {
+                int child = 2*i+1;
+                if ( child+1 < n &&
+                     Long.compareUnsigned( s[ child*this.stride ], s[ (child+1)*this.stride ] ) < 0 ) {
+                    child++;
+                }
+                if ( Long.compareUnsigned( s[ i*this.stride ], s[ child*this.stride ] ) >= 0 ) {
+                    return;
+                }
+                swapEntries( s, i, child );
+                i = child;
+            }
+        }
+
+        private void swapEntries( long[] s, int a, int b )
+        {
+            for ( int w = 0; w < this.stride; w++ ) {
+                long tmp = s[ a*this.stride + w ];
+                s[ a*this.stride + w ] = s[ b*this.stride + w ];
+                s[ b*this.stride + w ] = tmp;
+            }
+        }
+
+        // Shrinks the slab of the empty bucket b back to its initial size.
+        private void release( int b )
+        {
+            if ( this.slab[ b ].length > 16*this.stride ) {
+                this.slabWords -= this.slab[ b ].length - 16*this.stride;
+                this.slab[ b ]  = new long[ 16*this.stride ];
+            }
+        }
+
+        private int bucket( long key )
+        {
+            return 64 - Long.numberOfLeadingZeros( key ^ this.last );
+        }
+
+        // Returns the slab of bucket b with room for one more entry.
+        private long[] reserve( int b )
+        {
+            if ( (this.count[ b ] + 1)*this.stride > this.slab[ b ].length ) {
+                this.slabWords += this.slab[ b ].length;
+                this.slab[ b ]  = Arrays.copyOf( this.slab[ b ], 2*this.slab[ b ].length );
+            }
+            return this.slab[ b ];
+        }
+
+        private void setField( long[] s, int e, int f, int value )
+        {
+            int w = 1 + e + f/this.fieldsPerWord;
+            s[ w ] |= (long)value << ( (f % this.fieldsPerWord)*this.fieldBits );
+        }
+
+        private int getField( long[] s, int e, int f )
+        {
+            int w = 1 + e + f/this.fieldsPerWord;
+            return (int)( (s[w] >>> ( (f % this.fieldsPerWord)*this.fieldBits )) &
+                          ((1L << this.fieldBits) - 1) );
+        }
+
+        // Maps sums to unsigned longs in the order the nodes are popped.
+        private long key( double sum )
+        {
+            long bits = Double.doubleToLongBits( sum + 0.0 );  // -0.0 to 0.0
+            long key  = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+            return this.eval.maxSum() ? ~key : key;
+        }
+
+        // The inverse of key.
+        private double sum( long key )
+        {
+            if ( this.eval.maxSum() ) {
+                key = ~key;
+            }
+            long bits = key < 0 ? key ^ Long.MIN_VALUE : ~key;
+            return Double.longBitsToDouble( bits );
+        }
+    }
+
+    // A sorted run of border entries in a memory-mapped file.
+    private static class SpillRun
+    {
+        private final LongBuffer entries;
+        private final int        numEntries;
+        private final int        stride;
+        private int              next = 0;
+
+        public SpillRun( LongBuffer entries, int numEntries, int stride )
+        {
+            this.entries    = entries;
+            this.numEntries = numEntries;
+            this.stride     = stride;
+        }
+
+        public long head()
+        {
+            return this.entries.get( this.next*this.stride );
+        }
+
+        public void copyHead( long[] entry )
+        {
+            for ( int w = 0; w < this.stride; w++ ) {
+                entry[ w ] = this.entries.get( this.next*this.stride + w );
+            }
+        }
+
+        // Writes the entries that are left.
+        public void write( DataOutputStream out )
+            throws IOException
+        {
+            for ( int e = this.next*this.stride; e < this.numEntries*this.stride; e++ ) {
+                out.writeLong( this.entries.get( e ) );
+            }
+        }
+
+        // Moves to the next entry, returns false at the end of the run.
+        public boolean advance()
+        {
+            return ++this.next < this.numEntries;
+        }
+    }
 }
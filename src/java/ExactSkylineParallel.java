@@ -20,11 +20,11 @@
 // OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
 // THE SOFTWARE.
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Set;
@@ -34,7 +34,6 @@ import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.ConcurrentSkipListMap;
 
 public class ExactSkylineParallel extends ExactSkyline
 {
@@ -89,80 +88,18 @@ public class ExactSkylineParallel extends ExactSkyline
         }
     }
 
-    //////////////////////////////////////////////////////////////////////
-    protected class SynchronizedMutableDouble extends MutableDouble
-    {
-        private ConcurrentSkipListMap<Double,Double> skyline;
-
-        private long time;
-
-        public SynchronizedMutableDouble( boolean maxSum )
-        {
-            Comparator<Double> cmp = null;
-            if ( maxSum ) {
-                cmp = new Comparator<Double>() {
-                        public int compare( Double a, Double b ) {
-                            return (int)Math.signum( b - a );
-                        }
-                    };
-            }
-            else {
-                cmp = new Comparator<Double>() {
-                        public int compare( Double a, Double b ) {
-                            return (int)Math.signum( a - b );
-                        }
-                    };
-            }
-            this.skyline = new ConcurrentSkipListMap<>( cmp );
-            // make sure there is always something in the list.
-            // this should guarantee the floorEntry method always returns something
-            if ( maxSum ) {
-                this.skyline.put( Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY );
-            } else {
-                this.skyline.put( Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY );
-            }
-        }
-        
-        public double value( double sumvalue )
-        {
-            return this.skyline.floorEntry( sumvalue ).getValue();
-        }
-
-        public synchronized void setValue( double sumValue, double submValue )
-        {
-            long btime = System.nanoTime();
-            if ( value( sumValue ) > submValue  ) {
-                return;
-            }
-
-            Iterator<Map.Entry<Double,Double>> it =
-                this.skyline.tailMap(sumValue, true).entrySet().iterator();
-            
-            while( it.hasNext() ) {
-                Map.Entry<Double,Double> kvpair = it.next();
-                if ( kvpair.getValue() <= submValue ) {
-                    it.remove();
-                }
-                else {
-                    break;
-                }
-            }
-            this.skyline.put( sumValue, submValue );
-            this.time += (System.nanoTime() - btime);
-        }
-    }
-
     //////////////////////////////////////////////////////////////////////
     public ExactSkylineParallel() { }
 
     // Make sure to set _INTERVAL_COUNT to some value before calling this method...
     protected MutableDouble getSubmBestObject( boolean maxSum )
     {
-        return new SynchronizedMutableDouble( maxSum );
+        return new SkylineStaircase( maxSum, true );
     }
 
     public void configure( Map<String,Object> config )
     {
+        super.configure( config );
         this._INTERVAL_COUNT = Integer.parseInt( (String)config.get( "i" ) );
         this._NUM_THREADS    = Integer.parseInt( (String)config.get( "t" ) );
         this._INIT_WITH_FAST = config.containsKey( "fastInit" );
@@ -176,6 +113,10 @@ public class ExactSkylineParallel extends ExactSkyline
                                                           new LinkedBlockingQueue<Runnable>() );
 
         MutableDouble submBest = getSubmBestObject( eval.maxSum() );
+        openSearch( eval, k );
+        if ( resumesFromCheckpoints() ) {
+            loadCheckpointSkylines( k, eval, submBest );
+        }
         if ( this._INIT_WITH_FAST ) {
             // we first run FastSkyline to get an initial set of upper bounds
             // to be used in submBest.
@@ -203,8 +144,9 @@ public class ExactSkylineParallel extends ExactSkyline
             ioe.printStackTrace();
         }
         System.err.println( "All intervals are processed!" );
+        closeSearch();
         System.err.printf( "Synchronisation time: %.2f msec\n",
-                           ((SynchronizedMutableDouble)submBest).time/1000000.0 );
+                           ((SkylineStaircase)submBest).time()/1000000.0 );
         
         // here we should still merge the individual skylines from different parts...
         return joinSkylines( runnables, eval.maxSum() );
@@ -247,7 +189,23 @@ public class ExactSkylineParallel extends ExactSkyline
                                                 int           numSegments,
                                                 int           interval )
     {
-        int        numItems     = eval.numItems();
+        int                  numItems        = eval.numItems();
+        List<SearchTreeNode> beginGenerators = beginGenerators( k, numItems, numSegments, interval );
+        System.err.printf( "computeInterval: got %d begin generators:\n",
+                           beginGenerators.size() );
+        for ( SearchTreeNode stn : beginGenerators ) {
+            System.err.printf( "%s, rank = %s\n",
+                               stn.toString(), rank(stn, numItems).toString() );
+        }
+        Set<SearchTreeNode> endGenerators = endGenerators( k, numItems, numSegments, interval );
+        System.err.printf( "computeInterval: got %d end generators.\n",
+                           endGenerators.size() );
+        return computeSkylineInterval( k, eval,
+                                       submBest, beginGenerators, endGenerators, interval );
+    }
+
+    private BigInteger intervalLength( int k, int numItems, int numSegments )
+    {
         BigInteger totalSubsets = Utils.nchoosek( numItems, k );
         BigInteger delta        = totalSubsets.divide( BigInteger.valueOf( (long)numSegments ) );
         // if ( totalSubsets % numSegments != 0 )
@@ -255,15 +213,21 @@ public class ExactSkylineParallel extends ExactSkyline
              compareTo( BigInteger.ZERO ) != 0 ) {
             delta.add( BigInteger.ONE );
         }
-        List<SearchTreeNode> beginGenerators =
-            findInterval(delta.multiply(BigInteger.valueOf(interval-1)).add(BigInteger.ONE),
-                         delta, numItems, k);
-        System.err.printf( "computeInterval: got %d begin generators:\n",
-                           beginGenerators.size() );
-        for ( SearchTreeNode stn : beginGenerators ) {
-            System.err.printf( "%s, rank = %s\n",
-                               stn.toString(), rank(stn, numItems).toString() );
-        }
+        return delta;
+    }
+
+    private List<SearchTreeNode> beginGenerators( int k, int numItems,
+                                                  int numSegments, int interval )
+    {
+        BigInteger delta = intervalLength( k, numItems, numSegments );
+        return findInterval(delta.multiply(BigInteger.valueOf(interval-1)).add(BigInteger.ONE),
+                            delta, numItems, k);
+    }
+
+    private Set<SearchTreeNode> endGenerators( int k, int numItems,
+                                               int numSegments, int interval )
+    {
+        BigInteger          delta         = intervalLength( k, numItems, numSegments );
         Set<SearchTreeNode> endGenerators = new HashSet<>();
         if ( interval < numSegments ) {
             List<SearchTreeNode> tmp =
@@ -273,10 +237,34 @@ public class ExactSkylineParallel extends ExactSkyline
                 endGenerators.add( node );
             }
         }
-        System.err.printf( "computeInterval: got %d end generators.\n",
-                           endGenerators.size() );
-        return computeSkylineInterval( k, eval,
-                                       submBest, beginGenerators, endGenerators );
+        return endGenerators;
+    }
+
+    // Sets submBest from the skylines in the checkpoints of all intervals,
+    // so that every interval prunes with them from the start.
+    private void loadCheckpointSkylines( int k, Evaluator eval, MutableDouble submBest )
+    {
+        for ( int interval = 1; interval <= this._INTERVAL_COUNT; interval++ ) {
+            SearchCheckpoint checkpoint =
+                getCheckpoint( eval, k,
+                               beginGenerators( k, eval.numItems(), this._INTERVAL_COUNT, interval ),
+                               endGenerators( k, eval.numItems(), this._INTERVAL_COUNT, interval ),
+                               interval );
+            if ( !checkpoint.exists() ) {
+                continue;
+            }
+            try ( DataInputStream in = checkpoint.open() ) {
+                in.readLong();
+                for ( SkylinePoint p : SearchCheckpoint.readSkyline( in ) ) {
+                    submBest.setValue( p.sumValue(), p.submodularValue() );
+                }
+            }
+            catch ( IOException e ) {
+                // the interval ignores the checkpoint too and starts over
+                System.err.printf( "ExactSkylineParallel: cannot use checkpoint %s: %s\n",
+                                   checkpoint.file(), e.getMessage() != null ? e.getMessage() : e );
+            }
+        }
     }
 
     // index: Starting index of the interval.
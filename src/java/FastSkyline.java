@@ -23,6 +23,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Map;
@@ -30,7 +31,10 @@ import java.util.PriorityQueue;
 
 public class FastSkyline extends SkylineAlg
 {
-    private int skylineSize = Integer.MAX_VALUE;
+    private int skylineSize    = Integer.MAX_VALUE;
+    // At most this many marginal gain oracles are open at a time, option
+    // "oracles". An oracle can be large, e.g. a bitset per sample in infmax.
+    private int maxOpenOracles = 64;
     
     public FastSkyline() {}
     
@@ -56,6 +60,9 @@ public class FastSkyline extends SkylineAlg
         if ( config.containsKey( "f" ) ) {
             this.skylineSize = Integer.parseInt( (String)config.get( "f" ) );
         }
+        if ( config.containsKey( "oracles" ) ) {
+            this.maxOpenOracles = Integer.parseInt( (String)config.get( "oracles" ) );
+        }
     }
 
     private List<SkylinePoint> expandSkyline( List<SkylinePoint> skyline,
@@ -63,7 +70,7 @@ public class FastSkyline extends SkylineAlg
                                               MarginalGainUB mgub )
     {
         List<SkylinePoint> nextSkyline = new LinkedList<>();
-        SkylineExpander sle = new SkylineExpander( skyline, eval, mgub );
+        SkylineExpander sle = new SkylineExpander( skyline, eval, mgub, this.maxOpenOracles );
         double maxSubmValue = Double.NEGATIVE_INFINITY;
         CandidatePoint previous = new CandidatePoint( SkylinePoint.getEmptyPoint(), -1, -1 );
         while( sle.hasNext() ) {
@@ -71,7 +78,7 @@ public class FastSkyline extends SkylineAlg
             // We only process a point if it is not equal to the previous one.
             CandidatePoint next = sle.next( maxSubmValue );
             if ( !next.equals( previous ) ) {
-                maxSubmValue = processCandidate( next, nextSkyline, eval, mgub, maxSubmValue );
+                maxSubmValue = processCandidate( next, sle, nextSkyline, eval, mgub, maxSubmValue );
                 previous = next;
             }
         }
@@ -79,6 +86,7 @@ public class FastSkyline extends SkylineAlg
     }
 
     private double processCandidate( CandidatePoint     cand,
+                                     SkylineExpander    sle,
                                      List<SkylinePoint> nextSkyline,
                                      Evaluator          eval,
                                      MarginalGainUB     mgub,
@@ -87,8 +95,16 @@ public class FastSkyline extends SkylineAlg
         if ( mgub.boundExceedsMax( cand.basePoint, cand.v, maxSubmValue ) ) {
             // int[] newitems   = cand.basePoint.extend( cand.v );
             int[] newitems = cand.newitems;
-            double submValue = eval.submodularFnc( newitems );
+            double submValue = cand.basePoint.submodularValue() + sle.gain( cand, eval );
             mgub.addGain( cand.basePoint, cand.v, submValue - cand.basePoint.submodularValue() );
+            if ( submValue > maxSubmValue ) {
+                // Skyline points get the value of a direct evaluation, so that
+                // they agree exactly with the values other algorithms compute
+                // for the same set. The oracle can differ in the last bits,
+                // so the point is admitted only if the direct value beats
+                // maxSubmValue too.
+                submValue = eval.submodularFnc( newitems );
+            }
             if ( submValue > maxSubmValue ) {
                 nextSkyline.add( new SkylinePoint( newitems, eval.sumFnc(newitems), submValue ) );
                 updatePeakMemory();
@@ -116,11 +132,26 @@ public class FastSkyline extends SkylineAlg
     {
         private PriorityQueue<CandidatePoint> queue;
         private ExpansionIterator[] pointIterator;
+        private int exhaustedPos = -1;
+        // Iterators with an open oracle, least recently used first. The
+        // oracle of the eldest is released when there are too many, and
+        // opened again if its base point comes up later.
+        private LinkedHashMap<ExpansionIterator,Boolean> openOracles;
         
         public SkylineExpander( List<SkylinePoint> skyline,
                                 Evaluator          eval,
-                                MarginalGainUB     mgub )
+                                MarginalGainUB     mgub,
+                                final int          maxOpenOracles )
         {
+            this.openOracles = new LinkedHashMap<ExpansionIterator,Boolean>( 16, 0.75f, true ) {
+                    protected boolean removeEldestEntry( Map.Entry<ExpansionIterator,Boolean> eldest ) {
+                        if ( size() > Math.max( 1, maxOpenOracles ) ) {
+                            eldest.getKey().releaseOracle();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
             this.queue = new PriorityQueue<>( skyline.size(),
                                               getCandidateComparator( eval ) );
 
@@ -142,14 +173,32 @@ public class FastSkyline extends SkylineAlg
 
         public CandidatePoint next( double maxSubmValue )
         {
+            // The oracle of an exhausted iterator is released only after
+            // its last candidate has been processed.
+            if ( this.exhaustedPos >= 0 ) {
+                this.pointIterator[ this.exhaustedPos ].releaseOracle();
+                this.openOracles.remove( this.pointIterator[ this.exhaustedPos ] );
+                this.exhaustedPos = -1;
+            }
             CandidatePoint p = this.queue.poll();
             CandidatePoint c = this.pointIterator[ p.basePointPos ].next( maxSubmValue );
             if ( c != null ) {
                 this.queue.add( c );
             }
+            else {
+                this.exhaustedPos = p.basePointPos;
+            }
             return p;
         }
 
+        // Marginal gain of cand.v with respect to the base point of cand.
+        public double gain( CandidatePoint cand, Evaluator eval )
+        {
+            ExpansionIterator it = this.pointIterator[ cand.basePointPos ];
+            this.openOracles.put( it, Boolean.TRUE );
+            return it.gain( cand.v, eval );
+        }
+
         // Returns a comparator that orders candidate points in increasing
         // (maxSum = false) or decreasing (maxSum = true) order of the sum function.
         // Ties are broken by looking at the items of a candidate.
@@ -188,6 +237,8 @@ public class FastSkyline extends SkylineAlg
         private MarginalGainUB mgub;
         private int            numItems;
         private int            currentItem;
+        // opened when the first candidate of basePoint is evaluated
+        private MarginalGainOracle oracle;
         
         public ExpansionIterator( SkylinePoint p, int basePointPos,
                                   MarginalGainUB mgub, int numItems )
@@ -225,6 +276,19 @@ public class FastSkyline extends SkylineAlg
                                        this.currentItem );
         }
 
+        public double gain( int item, Evaluator eval )
+        {
+            if ( this.oracle == null ) {
+                this.oracle = eval.openOracle( this.basePoint.suffixItems( 0 ) );
+            }
+            return this.oracle.gain( item );
+        }
+
+        public void releaseOracle()
+        {
+            this.oracle = null;
+        }
+
         // The iterator becomes exhausted when pos reaches the end, or when
         // we know that further items down the array cannot lead to an increase
         // in submodular value.
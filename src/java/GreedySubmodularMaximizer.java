@@ -51,8 +51,8 @@ public class GreedySubmodularMaximizer
         System.err.printf( "GreedySubmodularMaximizer: fncValue = %.2f\n", fncValue );
         best.gain = 0;
 
-        // construct a partial solution that we can use to evaluate f
-        int[] partial = getPartialSolution( solution );
+        // the oracle evaluates marginal gains with respect to the current solution
+        MarginalGainOracle oracle = f.openOracle( new int[] { best.item } );
 
         while( solution.size() < k ) {
             ItemGainPair top = mg.poll();
@@ -64,15 +64,14 @@ public class GreedySubmodularMaximizer
                 System.err.printf( "GreedySubmodularMaximizer: fncValue = %.2f\n", fncValue );
                 // re-insert top into mg as it may be used later
                 mg.add( top );
+                // update oracle so that it matches the new solution
+                oracle.commit( best.item );
                 // current best no longer has any marginal gain
                 best.gain = 0;
-                // update partial so that it matches the new solution
-                partial = getPartialSolution( solution );
             }
             else {
                 // compute actual gain of topmost candidate given current solution.
-                partial[ partial.length - 1 ] = top.item;
-                top.gain = f.value( partial ) - fncValue;
+                top.gain = oracle.gain( top.item );
                 if ( top.gain > best.gain ) {
                     // top is the new best, old best must go back into mg
                     mg.add( best );
@@ -88,15 +87,6 @@ public class GreedySubmodularMaximizer
         return Utils.intListToArray( solution );
     }
 
-    private int[] getPartialSolution( List<Integer> solution )
-    {
-        int[] set = new int[ solution.size() + 1 ];
-        for ( int i = 0; i < set.length-1; i++ ) {
-            set[i] = solution.get(i);
-        }
-        return set;
-    }
-
     private class ItemGainPair
     {
         private int    item;
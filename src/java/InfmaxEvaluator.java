@@ -20,20 +20,40 @@
 // OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
 // THE SOFTWARE.
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public class InfmaxEvaluator extends Evaluator
 {
-    private SampleDB      db;
-    private double[]      cost;
-    private EdgelistGraph g;
+    // Number of RR sets generated from one random stream. This is fixed so
+    // that results do not depend on the number of threads.
+    private static final int RR_BLOCK_SIZE = 4096;
+
+    // Sample cache files start with this, followed by the format version.
+    private static final long SAMPLE_FILE_MAGIC   = 0x534b59534d504c53L; // "SKYSMPLS"
+    private static final int  SAMPLE_FILE_VERSION = 1;
+    // Samples are written through a buffer of this size.
+    private static final int  WRITE_CHUNK_BYTES   = 1 << 20;
+
+    private InfluenceOracle  db;
+    private double[]         cost;
+    private CSRGraph         g;
+    private SplittableRandom rnd;
+    private String           sampleKey;
 
     public InfmaxEvaluator() { }
 
@@ -44,44 +64,179 @@ public class InfmaxEvaluator extends Evaluator
         String graphFileName = (String)options.get( "g" );
         double edgeProb      = Double.parseDouble( (String)options.get( "p" ) );
         int    numSamples    = Integer.parseInt( (String)options.get( "s" ) );
-        init( graphFileName, edgeProb, numSamples );
+        // If the number of RR sets is given we use the RIS estimator instead
+        // of full live-edge samples.
+        int    numRRSets     = 0;
+        if ( options.containsKey( "r" ) ) {
+            numRRSets = Integer.parseInt( (String)options.get( "r" ) );
+        }
+        long   seed          = options.containsKey( "seed" ) ?
+            Long.parseLong( (String)options.get( "seed" ) ) : randomSeed();
+        // Samples are cached in sampleCache if it is given. The cache is keyed
+        // by the seed, so it can only be used if the seed is fixed.
+        File   sampleFile    = null;
+        if ( options.containsKey( "sampleCache" ) && numRRSets == 0 ) {
+            if ( options.containsKey( "seed" ) ) {
+                sampleFile = sampleCacheFile( (String)options.get( "sampleCache" ),
+                                              graphFileName, edgeProb, numSamples, seed );
+            }
+            else {
+                System.err.println( "InfmaxEvaluator: sampleCache requires a seed, not caching." );
+            }
+        }
+        initRandom( seed );
+        init( graphFileName, edgeProb, numSamples, numRRSets, sampleFile );
     }
 
     public void init( int[] i, int[] j, double[] prob, int numSamples )
     {
-        this.g  = new EdgelistGraph( i, j, prob );
+        init( i, j, prob, numSamples, 0, randomSeed() );
+    }
+
+    // As above, but uses numRRSets reverse-reachable sets instead of
+    // live-edge samples if numRRSets > 0. All randomness is derived from seed.
+    public void init( int[] i, int[] j, double[] prob, int numSamples, int numRRSets, long seed )
+    {
+        initRandom( seed );
+        this.g  = CSRGraph.fromTriplets( i, j, prob );
         this.origItem = new int[ this.g.numVertices() ];
         for ( int l = 0; l < this.origItem.length; l++ ) {
             this.origItem[ l ] = l;
         }
         this.cost = new double[ this.g.numVertices() ]; // zero cost vertices
-        this.db = new SampleDB( this.g, numSamples );
+        this.db = newInfluenceOracle( this.g, numSamples, numRRSets );
     }
 
     private void init( String graphFileName,
                        double edgeProb,
-                       int numSamples )
+                       int numSamples,
+                       int numRRSets,
+                       File sampleFile )
         throws Exception
     {
-        EdgelistGraph g = new EdgelistGraph( graphFileName, edgeProb );
+        this.g = CSRGraph.load( graphFileName, edgeProb );
         double[] c = initRandomCost( g.numVertices(), 1.0, 5.0 );
         this.origItem = Utils.sortedIdx( c, this.maxSum );
         this.cost = new double[ c.length ];
         for ( int i = 0; i < c.length; i++ ) {
             this.cost[ i ] = c[ this.origItem[i] ];
         }
-        this.db = new SampleDB( g, numSamples );
+        if ( sampleFile != null ) {
+            this.db = cachedSampleDB( g, numSamples, sampleFile );
+        }
+        else {
+            this.db = newInfluenceOracle( g, numSamples, numRRSets );
+        }
+    }
+
+    private InfluenceOracle newInfluenceOracle( CSRGraph g, int numSamples, int numRRSets )
+    {
+        if ( numRRSets > 0 ) {
+            return new RRSetDB( g, numRRSets, this.rnd.split() );
+        }
+        return new SampleDB( g, numSamples, this.rnd.split() );
+    }
+
+    // Maps the sample cache in sampleFile if it exists, otherwise builds the
+    // samples and writes them to sampleFile for later runs.
+    private InfluenceOracle cachedSampleDB( CSRGraph g, int numSamples, File sampleFile )
+        throws IOException
+    {
+        // split even if the stream is not used, so that everything after
+        // this is the same whether the cache was hit or not
+        SplittableRandom dbRnd = this.rnd.split();
+        if ( sampleFile.exists() ) {
+            SampleDB db = mapSampleDB( sampleFile, g.numVertices(), numSamples );
+            if ( db != null ) {
+                System.err.printf( "InfmaxEvaluator: mapped samples from %s\n", sampleFile );
+                return db;
+            }
+            System.err.printf( "InfmaxEvaluator: %s does not match, rebuilding.\n", sampleFile );
+        }
+        SampleDB db = new SampleDB( g, numSamples, dbRnd );
+        db.write( sampleFile );
+        return db;
+    }
+
+    // Maps the samples in sampleFile. The file consists of a header with the
+    // cache key, n, the number of samples and the byte offset of every sample,
+    // followed by the samples, see Sample.writeTo. Everything is little endian.
+    // Returns null if the file was written for a different key.
+    private SampleDB mapSampleDB( File sampleFile, int n, int numSamples )
+        throws IOException
+    {
+        try ( FileChannel ch = FileChannel.open( sampleFile.toPath(), StandardOpenOption.READ ) ) {
+            byte[] key = this.sampleKey.getBytes( StandardCharsets.UTF_8 );
+            int headerSize = sampleFileHeaderSize( key.length, numSamples );
+            if ( ch.size() < headerSize ) {
+                return null;
+            }
+            ByteBuffer header = ch.map( FileChannel.MapMode.READ_ONLY, 0, headerSize );
+            header.order( ByteOrder.LITTLE_ENDIAN );
+            if ( header.getLong() != SAMPLE_FILE_MAGIC ||
+                 header.getInt() != SAMPLE_FILE_VERSION ||
+                 header.getInt() != key.length ) {
+                return null;
+            }
+            byte[] fileKey = new byte[ key.length ];
+            header.get( fileKey );
+            header.position( headerSize - 8*(numSamples+1) - 8 );
+            if ( !Arrays.equals( key, fileKey ) ||
+                 header.getInt() != n || header.getInt() != numSamples ) {
+                return null;
+            }
+            Sample[] samples = new Sample[ numSamples ];
+            long begin = header.getLong();
+            for ( int i = 0; i < numSamples; i++ ) {
+                long end = header.getLong();
+                ByteBuffer bb = ch.map( FileChannel.MapMode.READ_ONLY, begin, end - begin );
+                samples[ i ] = new Sample( bb.order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer(), n );
+                begin = end;
+            }
+            return new SampleDB( samples );
+        }
+    }
+
+    private static int sampleFileHeaderSize( int keyLength, int numSamples )
+    {
+        int paddedKey = (keyLength + 7)/8*8;
+        return 16 + paddedKey + 8 + 8*(numSamples+1);
+    }
+
+    // The cache file name is derived from everything the samples depend on.
+    // The full key is also stored in the file and checked when mapping it.
+    private File sampleCacheFile( String cacheDir, String graphFileName,
+                                  double edgeProb, int numSamples, long seed )
+        throws IOException
+    {
+        File graphFile = new File( graphFileName ).getCanonicalFile();
+        String key = String.format( "%s|%d|%d|%s|%d|%d", graphFile.getPath(),
+                                    graphFile.length(), graphFile.lastModified(),
+                                    Double.toString( edgeProb ), numSamples, seed );
+        this.sampleKey = key;
+        return new File( cacheDir, String.format( "samples-%08x.bin", key.hashCode() ) );
+    }
+
+    private void initRandom( long seed )
+    {
+        System.err.printf( "InfmaxEvaluator: using seed %d\n", seed );
+        this.rnd = new SplittableRandom( seed );
+    }
+
+    private long randomSeed()
+    {
+        return new SplittableRandom().nextLong();
     }
     
     public double sumFnc( int item )
     {
-        this.sumCalls++;
+        this.sumCalls.increment();
         return this.cost[item];
     }
 
     public double sumFnc( int[] items )
     {
-        this.sumCalls++;
+        this.sumCalls.increment();
         double s = 0.0;
         for ( int item : items ) {
             s += this.cost[item];
@@ -91,14 +246,34 @@ public class InfmaxEvaluator extends Evaluator
 
     public double submodularFnc( int item )
     {
-        this.submCalls++;
-        return this.db.influence( item );
+        this.submCalls.increment();
+        long   start = startTimer();
+        double value = this.db.influence( item );
+        stopTimer( 1, 1, start );
+        return value;
     }
 
     public double submodularFnc( int[] items )
     {
-        this.submCalls++;
-        return this.db.influence( items );
+        this.submCalls.increment();
+        long   start = startTimer();
+        double value = this.db.influence( items );
+        stopTimer( items.length, 1, start );
+        return value;
+    }
+
+    public double[] submodularFnc( int[][] itemsets )
+    {
+        this.submCalls.add( itemsets.length );
+        long     start  = startTimer();
+        double[] values = this.db.influence( itemsets );
+        stopTimer( itemsets, null, itemsets.length, start );
+        return values;
+    }
+
+    public MarginalGainOracle openOracle( int[] base )
+    {
+        return this.db.openOracle( base );
     }
 
     public int numItems()
@@ -107,30 +282,98 @@ public class InfmaxEvaluator extends Evaluator
     }
 
     public int vertexIdToName( int id ) {
-        return this.g.getVertexName( id );
+        return this.g.vertexName( id );
     }
 
     private double[] initRandomCost( int numVertices, double minCost, double maxCost )
     {
+        SplittableRandom rnd = this.rnd.split();
         double[] costs = new double[ numVertices ];
         for ( int i = 0; i < costs.length; i++ ) {
-            costs[i] = minCost + (maxCost - minCost)*Math.random();
+            costs[i] = minCost + (maxCost - minCost)*rnd.nextDouble();
         }
         return costs;
     }
 
-    private class SampleDB
+    // Estimates the expected number of vertices (excluding the seeds themselves)
+    // that a set of seeds activates.
+    private interface InfluenceOracle
+    {
+        public double influence( int item );
+
+        public double influence( int[] items );
+
+        public double[] influence( int[][] itemsets );
+
+        public MarginalGainOracle openOracle( int[] base );
+    }
+
+    private class SampleDB implements InfluenceOracle
     {
-        private List<Sample> samples;
+        private Sample[] samples;
+
+        public SampleDB( Sample[] samples )
+        {
+            this.samples = samples;
+        }
         
-        public SampleDB( EdgelistGraph g, int numSamples )
+        // Samples are built in parallel. Every sample gets its own random
+        // stream split off from rnd in sample order, so the samples only
+        // depend on the seed and not on how they are scheduled.
+        public SampleDB( CSRGraph g, int numSamples, SplittableRandom rnd )
         {
-            this.samples = new LinkedList<Sample>();
+            long begTime = System.nanoTime();
+            SplittableRandom[] streams = new SplittableRandom[ numSamples ];
             for ( int i = 0; i < numSamples; i++ ) {
-                this.samples.add( new Sample( g ) );
-                System.err.print(".");
+                streams[ i ] = rnd.split();
             }
-            System.err.println();
+            this.samples = new Sample[ numSamples ];
+            IntStream.range( 0, numSamples ).parallel().forEach( new IntConsumer() {
+                    public void accept( int i ) {
+                        samples[ i ] = new Sample( g, streams[i] );
+                    }
+                } );
+            System.err.printf( "InfmaxEvaluator: built %d samples in %.2f sec.\n",
+                               numSamples, (System.nanoTime() - begTime)/1000000000.0 );
+        }
+
+        // Writes the samples to a temporary file that is renamed to sampleFile
+        // once it is complete.
+        public void write( File sampleFile )
+            throws IOException
+        {
+            File dir = sampleFile.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            File tmp = File.createTempFile( "samples", ".tmp", dir );
+            byte[] key = sampleKey.getBytes( StandardCharsets.UTF_8 );
+            int headerSize = sampleFileHeaderSize( key.length, this.samples.length );
+            ByteBuffer header = ByteBuffer.allocate( headerSize ).order( ByteOrder.LITTLE_ENDIAN );
+            header.putLong( SAMPLE_FILE_MAGIC );
+            header.putInt( SAMPLE_FILE_VERSION );
+            header.putInt( key.length );
+            header.put( key );
+            header.position( headerSize - 8*(this.samples.length+1) - 8 );
+            header.putInt( numItems() );
+            header.putInt( this.samples.length );
+            long offset = headerSize;
+            header.putLong( offset );
+            for ( Sample s : this.samples ) {
+                offset += s.byteSize();
+                header.putLong( offset );
+            }
+            header.flip();
+            try ( FileChannel ch = FileChannel.open( tmp.toPath(), StandardOpenOption.WRITE ) ) {
+                while ( header.hasRemaining() ) {
+                    ch.write( header );
+                }
+                ByteBuffer chunk = ByteBuffer.allocateDirect( WRITE_CHUNK_BYTES ).order( ByteOrder.LITTLE_ENDIAN );
+                for ( Sample s : this.samples ) {
+                    s.writeTo( ch, chunk );
+                }
+            }
+            Files.move( tmp.toPath(), sampleFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            System.err.printf( "InfmaxEvaluator: wrote samples to %s\n", sampleFile );
         }
 
         public double influence( int item )
@@ -139,7 +382,7 @@ public class InfmaxEvaluator extends Evaluator
             for ( Sample s : this.samples ) {
                 influence += ( s.influence(item) - 1 );
             }
-            return (double)influence/(double)this.samples.size();
+            return (double)influence/(double)this.samples.length;
         }
 
         public double influence( int[] items )
@@ -148,142 +391,590 @@ public class InfmaxEvaluator extends Evaluator
             for ( Sample s : this.samples ) {
                 influence += ( s.influence(items) - items.length );
             }
-            return (double)influence/(double)this.samples.size();
+            return (double)influence/(double)this.samples.length;
+        }
+
+        // Evaluates the itemsets one sample at a time, so that a sample is
+        // brought to the cache once for the whole batch.
+        public double[] influence( int[][] itemsets )
+        {
+            int[] influence = new int[ itemsets.length ];
+            for ( Sample s : this.samples ) {
+                for ( int i = 0; i < itemsets.length; i++ ) {
+                    influence[ i ] += ( s.influence(itemsets[i]) - itemsets[i].length );
+                }
+            }
+            double[] values = new double[ itemsets.length ];
+            for ( int i = 0; i < itemsets.length; i++ ) {
+                values[ i ] = (double)influence[ i ]/(double)this.samples.length;
+            }
+            return values;
+        }
+
+        public MarginalGainOracle openOracle( int[] base )
+        {
+            return new SampleGainOracle( base );
+        }
+
+        // Keeps the set of components covered by the base set in every sample.
+        private class SampleGainOracle extends MarginalGainOracle
+        {
+            private BitSet[] covered;
+
+            public SampleGainOracle( int[] base )
+            {
+                super( base, influence( base ) );
+                this.covered = new BitSet[ samples.length ];
+                for ( int s = 0; s < samples.length; s++ ) {
+                    this.covered[ s ] = new BitSet( samples[ s ].numComponents() );
+                    for ( int item : base ) {
+                        samples[ s ].cover( this.covered[s], item );
+                    }
+                }
+            }
+
+            public double gain( int item )
+            {
+                submCalls.increment();
+                int influence = 0;
+                for ( int s = 0; s < samples.length; s++ ) {
+                    influence += samples[ s ].uncovered( this.covered[s], item );
+                }
+                return (double)influence/(double)samples.length - 1.0;
+            }
+
+            protected double extend( int item )
+            {
+                int influence = 0;
+                for ( int s = 0; s < samples.length; s++ ) {
+                    influence += samples[ s ].cover( this.covered[s], item );
+                }
+                return (double)influence/(double)samples.length - 1.0;
+            }
         }
     }
     
-    private class Sample
+    // Reverse influence sampling: every RR set is the set of vertices that
+    // reach a uniformly chosen root in a random live-edge graph. The expected
+    // number of activated vertices of a seed set S is n times the fraction of
+    // RR sets that S hits. Only the reverse BFS from the root is explored, so
+    // the cost of a single RR set is proportional to its size.
+    private class RRSetDB implements InfluenceOracle
     {
-        private int[][] reach;
+        private int   numVertices;
+        private int   numRRSets;
+        // For every item, the ids of RR sets that contain it.
+        private int[] setOffset;
+        private int[] setIds;
 
-        public Sample( EdgelistGraph g )
+        public RRSetDB( CSRGraph g, int numRRSets, SplittableRandom rnd )
         {
-            HashSet<Integer>[] R = new HashSet[ g.numVertices() ];
-            HashSet<Integer>[] U = new HashSet[ g.numVertices() ];
-            for ( int vertex = 0; vertex < g.numVertices(); vertex++ ) {
-                R[vertex] = new HashSet<Integer>();
-                R[vertex].add( vertex );
-                U[vertex] = new HashSet<Integer>();
-                U[vertex].add( vertex );
-            }
-            for ( Edge edge : g.edges ) {
-                if ( Math.random() <= edge.weight ) {
-                    HashSet<Integer> Uu = U[ edge.u ];
-                    HashSet<Integer> Rv = R[ edge.v ];
-                    for ( Integer uprime : Uu ) {
-                        R[uprime].addAll( Rv );
+            this.numVertices = g.numVertices();
+            this.numRRSets   = numRRSets;
+
+            // in-edges of every vertex in CSR format
+            int[]    inOffset = new int[ this.numVertices+1 ];
+            int[]    inSource = new int[ g.numEdges() ];
+            double[] inProb   = new double[ g.numEdges() ];
+            for ( int l = 0; l < g.numEdges(); l++ ) {
+                inOffset[ g.target(l)+1 ]++;
+            }
+            for ( int v = 0; v < this.numVertices; v++ ) {
+                inOffset[ v+1 ] += inOffset[ v ];
+            }
+            int[] inFill = Arrays.copyOf( inOffset, this.numVertices );
+            for ( int u = 0; u < this.numVertices; u++ ) {
+                for ( int l = g.begin(u); l < g.end(u); l++ ) {
+                    int v = g.target( l );
+                    inSource[ inFill[ v ] ] = u;
+                    inProb[ inFill[ v ] ]   = g.prob( l );
+                    inFill[ v ]++;
+                }
+            }
+
+            // Generate RR sets in blocks of RR_BLOCK_SIZE, every block with
+            // its own random stream. The vertices of RR set r are stored in
+            // rrVertex[ rrOffset[r] .. rrOffset[r+1]-1 ].
+            int                numBlocks   = (numRRSets + RR_BLOCK_SIZE - 1)/RR_BLOCK_SIZE;
+            SplittableRandom[] streams     = new SplittableRandom[ numBlocks ];
+            int[][]            blockOffset = new int[ numBlocks ][];
+            int[][]            blockVertex = new int[ numBlocks ][];
+            for ( int b = 0; b < numBlocks; b++ ) {
+                streams[ b ] = rnd.split();
+            }
+            ThreadLocal<int[]> visited = new ThreadLocal<int[]>() {
+                    protected int[] initialValue() {
+                        int[] v = new int[ numVertices ];
+                        Arrays.fill( v, -1 );
+                        return v;
+                    }
+                };
+            IntStream.range( 0, numBlocks ).parallel().forEach( new IntConsumer() {
+                    public void accept( int b ) {
+                        int first = b*RR_BLOCK_SIZE;
+                        int count = Math.min( RR_BLOCK_SIZE, numRRSets - first );
+                        blockOffset[ b ] = new int[ count+1 ];
+                        blockVertex[ b ] = generateBlock( first, count, inOffset, inSource, inProb,
+                                                          streams[b], visited.get(),
+                                                          blockOffset[b] );
                     }
-                    for ( Integer vprime : Rv ) {
-                        U[vprime].addAll( Uu );
+                } );
+
+            int[] rrOffset = new int[ numRRSets+1 ];
+            int   e        = 0;
+            for ( int b = 0; b < numBlocks; b++ ) {
+                for ( int r = 0; r < blockOffset[b].length-1; r++ ) {
+                    rrOffset[ b*RR_BLOCK_SIZE + r + 1 ] = e + blockOffset[b][r+1];
+                }
+                e += blockOffset[b][ blockOffset[b].length-1 ];
+            }
+            int[] rrVertex = new int[ e ];
+            for ( int b = 0; b < numBlocks; b++ ) {
+                System.arraycopy( blockVertex[b], 0, rrVertex, rrOffset[ b*RR_BLOCK_SIZE ],
+                                  blockOffset[b][ blockOffset[b].length-1 ] );
+            }
+
+            // Invert into item -> RR set ids. Items are vertices in the
+            // order of sorted costs, see origItem.
+            int[] itemOf = new int[ this.numVertices ];
+            for ( int i = 0; i < origItem.length; i++ ) {
+                itemOf[ origItem[i] ] = i;
+            }
+            this.setOffset = new int[ this.numVertices+1 ];
+            for ( int l = 0; l < e; l++ ) {
+                this.setOffset[ itemOf[ rrVertex[l] ]+1 ]++;
+            }
+            for ( int i = 0; i < this.numVertices; i++ ) {
+                this.setOffset[ i+1 ] += this.setOffset[ i ];
+            }
+            this.setIds = new int[ e ];
+            int[] fill = Arrays.copyOf( this.setOffset, this.numVertices );
+            for ( int r = 0; r < numRRSets; r++ ) {
+                for ( int l = rrOffset[r]; l < rrOffset[r+1]; l++ ) {
+                    int item = itemOf[ rrVertex[l] ];
+                    this.setIds[ fill[ item ]++ ] = r;
+                }
+            }
+            System.err.printf( "InfmaxEvaluator: Got %d RR sets of average size %.2f.\n",
+                               numRRSets, (double)e/(double)numRRSets );
+        }
+
+        // Generates RR sets first .. first+count-1 with a reverse BFS from a
+        // random root. Returns the vertices of the RR sets and fills offset.
+        // visited[u] == r means u has been added to RR set r.
+        private int[] generateBlock( int first, int count,
+                                     int[] inOffset, int[] inSource, double[] inProb,
+                                     SplittableRandom rnd, int[] visited, int[] offset )
+        {
+            int[] vertex = new int[ 2*count ];
+            int   e      = 0;
+            for ( int i = 0; i < count; i++ ) {
+                int r    = first + i;
+                int root = rnd.nextInt( this.numVertices );
+                vertex = ensureCapacity( vertex, e+1 );
+                vertex[ e++ ] = root;
+                visited[ root ] = r;
+                // vertex[ head .. e-1 ] is the BFS queue
+                for ( int head = offset[i]; head < e; head++ ) {
+                    int v = vertex[ head ];
+                    for ( int l = inOffset[v]; l < inOffset[v+1]; l++ ) {
+                        int u = inSource[ l ];
+                        if ( visited[ u ] != r && rnd.nextDouble() <= inProb[ l ] ) {
+                            visited[ u ] = r;
+                            vertex = ensureCapacity( vertex, e+1 );
+                            vertex[ e++ ] = u;
+                        }
                     }
                 }
+                offset[ i+1 ] = e;
             }
-            int[][] r = new int[g.numVertices()][0];
-            for ( int vertex = 0; vertex < g.numVertices(); vertex++ ) {
-                int[] rvertex = new int[ R[vertex].size() ];
-                int i = 0;
-                for ( int j : R[vertex] ) {
-                    rvertex[i] = j;
-                    i++;
+            return vertex;
+        }
+
+        public double influence( int item )
+        {
+            int hits = this.setOffset[ item+1 ] - this.setOffset[ item ];
+            return scale( hits ) - 1.0;
+        }
+
+        public double influence( int[] items )
+        {
+            BitSet hit = new BitSet( this.numRRSets );
+            for ( int item : items ) {
+                for ( int l = this.setOffset[item]; l < this.setOffset[item+1]; l++ ) {
+                    hit.set( this.setIds[ l ] );
                 }
-                r[vertex] = rvertex;
             }
-            // rearrange r so that it matches with sorted costs
-            // and put result in this.reach
-            this.reach = new int[g.numVertices()][0];
-            for ( int i = 0; i < this.reach.length; i++ ) {
-                this.reach[i] = r[ origItem[i] ]; //origItem defined in Evaluator.java
+            return scale( hit.cardinality() ) - items.length;
+        }
+
+        // Same as above, but the bitset is shared by the itemsets.
+        public double[] influence( int[][] itemsets )
+        {
+            double[] values = new double[ itemsets.length ];
+            BitSet   hit    = new BitSet( this.numRRSets );
+            for ( int i = 0; i < itemsets.length; i++ ) {
+                hit.clear();
+                for ( int item : itemsets[ i ] ) {
+                    for ( int l = this.setOffset[item]; l < this.setOffset[item+1]; l++ ) {
+                        hit.set( this.setIds[ l ] );
+                    }
+                }
+                values[ i ] = scale( hit.cardinality() ) - itemsets[ i ].length;
             }
+            return values;
         }
 
-        public int influence( int[] items ) {
-            BitSet cover = new BitSet( this.reach.length );
-            for ( int v : items ) {
-                for ( int u : this.reach[v] ) {
-                    cover.set( u );
+        public MarginalGainOracle openOracle( int[] base )
+        {
+            return new RRSetGainOracle( base );
+        }
+
+        // Keeps the set of RR sets hit by the base set.
+        private class RRSetGainOracle extends MarginalGainOracle
+        {
+            private BitSet hit;
+
+            public RRSetGainOracle( int[] base )
+            {
+                super( base, influence( base ) );
+                this.hit = new BitSet( numRRSets );
+                for ( int item : base ) {
+                    for ( int l = setOffset[item]; l < setOffset[item+1]; l++ ) {
+                        this.hit.set( setIds[ l ] );
+                    }
                 }
             }
-            return cover.cardinality();
+
+            public double gain( int item )
+            {
+                submCalls.increment();
+                int hits = 0;
+                for ( int l = setOffset[item]; l < setOffset[item+1]; l++ ) {
+                    if ( !this.hit.get( setIds[l] ) ) {
+                        hits++;
+                    }
+                }
+                return scale( hits ) - 1.0;
+            }
+
+            protected double extend( int item )
+            {
+                int hits = 0;
+                for ( int l = setOffset[item]; l < setOffset[item+1]; l++ ) {
+                    if ( !this.hit.get( setIds[l] ) ) {
+                        this.hit.set( setIds[l] );
+                        hits++;
+                    }
+                }
+                return scale( hits ) - 1.0;
+            }
         }
 
-        public int influence( int item ) {
-            return this.reach[ item ].length;
+        private double scale( int hits )
+        {
+            return (double)this.numVertices*(double)hits/(double)this.numRRSets;
+        }
+
+        private int[] ensureCapacity( int[] a, int size )
+        {
+            if ( size <= a.length ) {
+                return a;
+            }
+            return Arrays.copyOf( a, Math.max( size, 2*a.length ) );
         }
     }
 
-    private class EdgelistGraph
+    // A live-edge sample stored over the condensation of the live-edge graph:
+    // every vertex points to its strongly connected component, and every
+    // component stores the components it reaches (itself included) in CSR
+    // format. A giant component thus costs a single entry instead of one
+    // copy of the component per member.
+    // The arrays are kept in IntBuffers so that a sample can be either on the
+    // heap or mapped from a sample cache file.
+    private class Sample
     {
-        private List<Edge> edges;
-        private int nextNode = 0;
-        private Map<Integer,Integer> idmap;
-        private Map<Integer,Integer> namemap;
-
-        // Loads an edgelist graph from file graphFn and associates
-        // every edge with probability edgeProb.
-        public EdgelistGraph( String graphFn, double edgeProb )
-            throws Exception
+        private IntBuffer vertexComp;   // component of every vertex
+        private IntBuffer compSize;     // number of vertices in every component
+        private IntBuffer reachSize;    // number of vertices reached from every component
+        private IntBuffer reachOffset;  // reach of component c is in reachComp[
+        private IntBuffer reachComp;    //   reachOffset[c] .. reachOffset[c+1]-1 ]
+
+        // Wraps a sample written by writeTo over a graph with n vertices.
+        public Sample( IntBuffer data, int n )
         {
-            this.idmap = new HashMap<>();
-            this.namemap = new HashMap<>();
-            this.edges = new ArrayList<>();
-            for ( String row : Utils.fileLineIterator( graphFn, false ) ) {
-                if ( row.charAt(0) == '#' ) {
-                    continue;
+            int numComps     = data.get( 0 );
+            this.vertexComp  = data.slice( 1, n );
+            this.compSize    = data.slice( 1+n, numComps );
+            this.reachSize   = data.slice( 1+n+numComps, numComps );
+            this.reachOffset = data.slice( 1+n+2*numComps, numComps+1 );
+            int reachLength  = this.reachOffset.get( numComps );
+            this.reachComp   = data.slice( 2+n+3*numComps, reachLength );
+        }
+
+        // Draws a live-edge graph and computes the components reachable from
+        // every component. Components are found first, and reach is computed
+        // once per component over the condensation.
+        public Sample( CSRGraph g, SplittableRandom rnd )
+        {
+            int n = g.numVertices();
+
+            // live-edge graph in CSR format
+            int[] liveOffset = new int[ n+1 ];
+            int[] liveTarget = new int[ g.numEdges() ];
+            int   e          = 0;
+            for ( int v = 0; v < n; v++ ) {
+                liveOffset[ v ] = e;
+                for ( int l = g.begin(v); l < g.end(v); l++ ) {
+                    if ( rnd.nextDouble() <= g.prob( l ) ) {
+                        liveTarget[ e++ ] = g.target( l );
+                    }
                 }
-                String[] edges = row.trim().split( "\\s" );
-                this.edges.add( new Edge( getVertexId( Integer.parseInt( edges[0] ) ),
-                                          getVertexId( Integer.parseInt( edges[1] ) ),
-                                          edgeProb ) );
-                                                         
             }
-            System.err.printf( "InfmaxEvaluator: Got %d vertices.\n", this.nextNode );
+            liveOffset[ n ] = e;
+
+            // Components are numbered in reverse topological order, i.e.,
+            // every live edge leaving component c points to a component < c.
+            int[] comp     = new int[ n ];
+            int   numComps = stronglyConnectedComponents( liveOffset, liveTarget, comp );
+
+            // members of every component in CSR format
+            int[] memberOffset = new int[ numComps+1 ];
+            int[] member       = new int[ n ];
+            for ( int v = 0; v < n; v++ ) {
+                memberOffset[ comp[v]+1 ]++;
+            }
+            for ( int c = 0; c < numComps; c++ ) {
+                memberOffset[ c+1 ] += memberOffset[ c ];
+            }
+            int[] fill = Arrays.copyOf( memberOffset, numComps );
+            for ( int v = 0; v < n; v++ ) {
+                member[ fill[ comp[v] ]++ ] = v;
+            }
+
+            // Reach of a component is the component itself plus the union of
+            // the reach of its successors, which have all been computed already.
+            // mark[d] == c means d has been added to the reach of c.
+            int[] compSize    = new int[ numComps ];
+            int[] reachSize   = new int[ numComps ];
+            int[] reachOffset = new int[ numComps+1 ];
+            int[] reachComp   = new int[ Math.max( 16, numComps ) ];
+            int[] mark        = new int[ numComps ];
+            Arrays.fill( mark, -1 );
+            int size = 0;
+            for ( int c = 0; c < numComps; c++ ) {
+                compSize[ c ] = memberOffset[ c+1 ] - memberOffset[ c ];
+                reachOffset[ c ] = size;
+                reachComp = ensureCapacity( reachComp, size+1 );
+                reachComp[ size++ ] = c;
+                reachSize[ c ] = compSize[ c ];
+                mark[ c ] = c;
+                for ( int l = memberOffset[c]; l < memberOffset[c+1]; l++ ) {
+                    int v = member[ l ];
+                    for ( int t = liveOffset[v]; t < liveOffset[v+1]; t++ ) {
+                        int d = comp[ liveTarget[t] ];
+                        if ( mark[ d ] == c ) {
+                            continue;
+                        }
+                        for ( int r = reachOffset[d]; r < reachOffset[d+1]; r++ ) {
+                            int x = reachComp[ r ];
+                            if ( mark[ x ] != c ) {
+                                mark[ x ] = c;
+                                reachComp = ensureCapacity( reachComp, size+1 );
+                                reachComp[ size++ ] = x;
+                                reachSize[ c ] += compSize[ x ];
+                            }
+                        }
+                    }
+                }
+            }
+            reachOffset[ numComps ] = size;
+
+            this.vertexComp  = IntBuffer.wrap( comp );
+            this.compSize    = IntBuffer.wrap( compSize );
+            this.reachSize   = IntBuffer.wrap( reachSize );
+            this.reachOffset = IntBuffer.wrap( reachOffset );
+            this.reachComp   = IntBuffer.wrap( Arrays.copyOf( reachComp, size ) );
         }
 
-        // Constructs and edgelist graph from row, column, weight triplets.
-        // The weights should be interpreted as influence probabilities.
-        public EdgelistGraph( int[] i, int[] j, double[] w ) {
-            this.idmap   = new HashMap<>();
-            this.namemap = new HashMap<>();
-            this.edges   = new ArrayList<>();
-            for ( int r = 0; r < i.length; r++ ) {
-                this.edges.add( new Edge( getVertexId(i[r]),
-                                          getVertexId(j[r]),
-                                          w[r] ) );
+        // Size of the sample in bytes when written with writeTo.
+        public long byteSize()
+        {
+            return 4L*(1 + this.vertexComp.capacity() + this.compSize.capacity() +
+                       this.reachSize.capacity() + this.reachOffset.capacity() +
+                       this.reachComp.capacity());
+        }
+
+        // Writes the sample to ch through chunk, so that a sample is never
+        // copied to a single buffer of its full size.
+        public void writeTo( FileChannel ch, ByteBuffer chunk )
+            throws IOException
+        {
+            chunk.clear();
+            chunk.putInt( this.compSize.capacity() );
+            writeInts( ch, chunk, this.vertexComp.duplicate().clear() );
+            writeInts( ch, chunk, this.compSize.duplicate().clear() );
+            writeInts( ch, chunk, this.reachSize.duplicate().clear() );
+            writeInts( ch, chunk, this.reachOffset.duplicate().clear() );
+            writeInts( ch, chunk, this.reachComp.duplicate().clear() );
+            flushChunk( ch, chunk );
+        }
+
+        private void writeInts( FileChannel ch, ByteBuffer chunk, IntBuffer src )
+            throws IOException
+        {
+            while ( src.hasRemaining() ) {
+                if ( chunk.remaining() < 4 ) {
+                    flushChunk( ch, chunk );
+                }
+                IntBuffer out = chunk.asIntBuffer();
+                int len = Math.min( out.remaining(), src.remaining() );
+                IntBuffer part = src.slice();
+                part.limit( len );
+                out.put( part );
+                src.position( src.position() + len );
+                chunk.position( chunk.position() + 4*len );
+            }
+        }
+
+        private void flushChunk( FileChannel ch, ByteBuffer chunk )
+            throws IOException
+        {
+            chunk.flip();
+            while ( chunk.hasRemaining() ) {
+                ch.write( chunk );
             }
-            System.err.printf( "InfmaxEvaluator: Got %d vertices.\n", this.nextNode );
+            chunk.clear();
         }
 
-        public int numVertices()
+        // Items are in the order of sorted costs.
+        private int itemComp( int item )
         {
-            return this.nextNode;
+            return this.vertexComp.get( origItem[item] ); //origItem defined in Evaluator.java
         }
 
-        private int getVertexId( int vname )
+        // Iterative version of Tarjan's algorithm. Stores the component of
+        // every vertex in comp and returns the number of components.
+        private int stronglyConnectedComponents( int[] offset, int[] target, int[] comp )
         {
-            if ( !this.idmap.containsKey( vname ) ) {
-                this.idmap.put( vname, this.nextNode );
-                this.namemap.put( this.nextNode, vname );
-                this.nextNode++;
+            int   n        = comp.length;
+            int[] index    = new int[ n ];
+            int[] low      = new int[ n ];
+            int[] stack    = new int[ n ];
+            int[] callVertex = new int[ n ];
+            int[] callEdge   = new int[ n ];
+            int   nextIndex = 0;
+            int   numComps  = 0;
+            int   sp        = 0;
+            Arrays.fill( index, -1 );
+            Arrays.fill( comp, -1 );
+
+            for ( int root = 0; root < n; root++ ) {
+                if ( index[ root ] != -1 ) {
+                    continue;
+                }
+                int depth = 0;
+                callVertex[ 0 ] = root;
+                callEdge[ 0 ]   = offset[ root ];
+                index[ root ]   = low[ root ] = nextIndex++;
+                stack[ sp++ ]   = root;
+                while ( depth >= 0 ) {
+                    int v = callVertex[ depth ];
+                    if ( callEdge[ depth ] < offset[ v+1 ] ) {
+                        int w = target[ callEdge[depth]++ ];
+                        if ( index[ w ] == -1 ) {
+                            // descend into w
+                            index[ w ] = low[ w ] = nextIndex++;
+                            stack[ sp++ ] = w;
+                            depth++;
+                            callVertex[ depth ] = w;
+                            callEdge[ depth ]   = offset[ w ];
+                        }
+                        else if ( comp[ w ] == -1 ) {
+                            // w is still on the stack
+                            low[ v ] = Math.min( low[v], index[w] );
+                        }
+                    }
+                    else {
+                        if ( low[ v ] == index[ v ] ) {
+                            int w;
+                            do {
+                                w = stack[ --sp ];
+                                comp[ w ] = numComps;
+                            } while ( w != v );
+                            numComps++;
+                        }
+                        depth--;
+                        if ( depth >= 0 ) {
+                            int u = callVertex[ depth ];
+                            low[ u ] = Math.min( low[u], low[v] );
+                        }
+                    }
+                }
             }
-            return this.idmap.get( vname );
+            return numComps;
         }
 
-        // inverts the name->id mapping
-        private int getVertexName( int vid )
+        private int[] ensureCapacity( int[] a, int size )
         {
-            return this.namemap.get( vid );
+            if ( size <= a.length ) {
+                return a;
+            }
+            return Arrays.copyOf( a, Math.max( size, 2*a.length ) );
         }
-    }
 
-    private class Edge {
-        private int    u;
-        private int    v;
-        private double weight;
+        public int numComponents() {
+            return this.compSize.capacity();
+        }
 
-        public Edge( int u, int v, double w ) {
-            this.u = u;
-            this.v = v;
-            this.weight = w;
+        public int influence( int[] items ) {
+            BitSet covered = new BitSet( numComponents() );
+            int count = 0;
+            for ( int v : items ) {
+                count += cover( covered, v );
+            }
+            return count;
+        }
+
+        public int influence( int item ) {
+            return this.reachSize.get( itemComp( item ) );
+        }
+
+        // Number of vertices reached from item whose components are not in covered.
+        public int uncovered( BitSet covered, int item ) {
+            int c = itemComp( item );
+            if ( covered.get( c ) ) {
+                // everything reached from c is covered already
+                return 0;
+            }
+            int count = 0;
+            int end   = this.reachOffset.get( c+1 );
+            for ( int r = this.reachOffset.get( c ); r < end; r++ ) {
+                int x = this.reachComp.get( r );
+                if ( !covered.get( x ) ) {
+                    count += this.compSize.get( x );
+                }
+            }
+            return count;
+        }
+
+        // Adds the components reached from item to covered and returns
+        // the number of new vertices.
+        public int cover( BitSet covered, int item ) {
+            int c = itemComp( item );
+            if ( covered.get( c ) ) {
+                return 0;
+            }
+            int count = 0;
+            int end   = this.reachOffset.get( c+1 );
+            for ( int r = this.reachOffset.get( c ); r < end; r++ ) {
+                int x = this.reachComp.get( r );
+                if ( !covered.get( x ) ) {
+                    covered.set( x );
+                    count += this.compSize.get( x );
+                }
+            }
+            return count;
         }
     }
 }
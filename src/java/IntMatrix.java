@@ -32,6 +32,12 @@ public class IntMatrix
         return this.ncol;
     }
 
+    // The values in column-major order, column j starts at j*nrow.
+    public int[] data()
+    {
+        return this.data;
+    }
+
     public int get( int i, int j )
     {
         return this.data[ j*nrow + i ];
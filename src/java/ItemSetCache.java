@@ -0,0 +1,268 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A bounded cache from itemsets to values of type V that can be shared
+// between threads. Keys are int arrays that are compared by content, and
+// lookups can use a part of an array as the key without copying it: the
+// first length items, optionally without the item at position skip.
+//
+// The cache is split into stripes by the hash of the key, every stripe is
+// an LRU map with its own lock, so threads only contend when they hit the
+// same stripe. Capacity is the total weight of the entries, see weight. It
+// is split exactly between the stripes, the first capacity % NUM_STRIPES
+// stripes get one more. When a stripe is full its least recently used
+// entries are evicted, and a stripe of capacity 0 stores nothing.
+public class ItemSetCache<V>
+{
+    private static final int NUM_STRIPES = 16;
+
+    private final Stripe<V>[] stripes;
+    private final AtomicLong  hits   = new AtomicLong();
+    private final AtomicLong  misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public ItemSetCache( long capacity )
+    {
+        long stripeCapacity = capacity/NUM_STRIPES;
+        long rest           = capacity%NUM_STRIPES;
+        this.stripes = (Stripe<V>[])new Stripe<?>[ NUM_STRIPES ];
+        for ( int i = 0; i < NUM_STRIPES; i++ ) {
+            this.stripes[ i ] = new Stripe<V>( stripeCapacity + ( i < rest ? 1 : 0 ) );
+        }
+    }
+
+    // Weight of an entry. Every entry weighs one by default, so capacity is
+    // the number of entries. Override to bound the cache by size instead.
+    protected long weight( int[] items, V value )
+    {
+        return 1;
+    }
+
+    public V get( int[] items )
+    {
+        return get( items, items.length, -1 );
+    }
+
+    // Returns the value of items[0..length-1] without items[skip], or null.
+    // Use skip = -1 to keep all of the first length items.
+    public V get( int[] items, int length, int skip )
+    {
+        V value = peek( items, length, skip );
+        count( value != null );
+        return value;
+    }
+
+    // Same as get, but does not count a hit or a miss. Callers that probe
+    // several keys for one lookup count the lookup once with count.
+    public V peek( int[] items, int length, int skip )
+    {
+        Key key = new Key( items, length, skip );
+        Stripe<V> stripe = stripe( key );
+        synchronized ( stripe ) {
+            return stripe.get( key );
+        }
+    }
+
+    public void count( boolean hit )
+    {
+        if ( hit ) {
+            this.hits.incrementAndGet();
+        }
+        else {
+            this.misses.incrementAndGet();
+        }
+    }
+
+    public void put( int[] items, V value )
+    {
+        put( items, items.length, value );
+    }
+
+    // Stores value for items[0..length-1]. The items are copied.
+    public void put( int[] items, int length, V value )
+    {
+        Key key = new Key( Arrays.copyOf( items, length ), length, -1 );
+        long weight = weight( key.items, value );
+        Stripe<V> stripe = stripe( key );
+        synchronized ( stripe ) {
+            stripe.put( key, value, weight );
+        }
+    }
+
+    public void clear()
+    {
+        for ( Stripe<V> stripe : this.stripes ) {
+            synchronized ( stripe ) {
+                stripe.clear();
+            }
+        }
+    }
+
+    // Number of entries in the cache.
+    public long size()
+    {
+        long size = 0;
+        for ( Stripe<V> stripe : this.stripes ) {
+            synchronized ( stripe ) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits()
+    {
+        return this.hits.get();
+    }
+
+    public long misses()
+    {
+        return this.misses.get();
+    }
+
+    private Stripe<V> stripe( Key key )
+    {
+        return this.stripes[ (key.hash ^ (key.hash >>> 16)) & (NUM_STRIPES - 1) ];
+    }
+
+    private static class Stripe<V>
+    {
+        private final long capacity;
+        private long       weight = 0;
+        // access order, so iteration starts from the least recently used entry
+        private final LinkedHashMap<Key,Entry<V>> map = new LinkedHashMap<>( 16, 0.75f, true );
+
+        public Stripe( long capacity )
+        {
+            this.capacity = capacity;
+        }
+
+        public V get( Key key )
+        {
+            Entry<V> e = this.map.get( key );
+            return e == null ? null : e.value;
+        }
+
+        public void put( Key key, V value, long weight )
+        {
+            if ( this.capacity == 0 ) {
+                return;
+            }
+            Entry<V> old = this.map.put( key, new Entry<V>( value, weight ) );
+            if ( old != null ) {
+                this.weight -= old.weight;
+            }
+            this.weight += weight;
+            Iterator<Entry<V>> it = this.map.values().iterator();
+            while ( this.weight > this.capacity && this.map.size() > 1 ) {
+                this.weight -= it.next().weight;
+                it.remove();
+            }
+        }
+
+        public int size()
+        {
+            return this.map.size();
+        }
+
+        public void clear()
+        {
+            this.map.clear();
+            this.weight = 0;
+        }
+    }
+
+    private static class Entry<V>
+    {
+        private final V    value;
+        private final long weight;
+
+        public Entry( V value, long weight )
+        {
+            this.value  = value;
+            this.weight = weight;
+        }
+    }
+
+    // An itemset given as a view of an array. Stored keys always own their
+    // array and have skip = -1.
+    private static class Key
+    {
+        private final int[] items;
+        private final int   length;
+        private final int   skip;
+        private final int   hash;
+
+        public Key( int[] items, int length, int skip )
+        {
+            this.items  = items;
+            this.length = length;
+            this.skip   = skip;
+            int h = 1;
+            for ( int i = 0; i < length; i++ ) {
+                if ( i != skip ) {
+                    h = 31*h + items[i];
+                }
+            }
+            this.hash = h;
+        }
+
+        public int size()
+        {
+            return ( this.skip >= 0 && this.skip < this.length ) ? this.length-1 : this.length;
+        }
+
+        public int hashCode()
+        {
+            return this.hash;
+        }
+
+        public boolean equals( Object other )
+        {
+            Key o = (Key)other;
+            if ( this.hash != o.hash || size() != o.size() ) {
+                return false;
+            }
+            int i = 0;
+            int j = 0;
+            while ( i < this.length && j < o.length ) {
+                if ( i == this.skip ) {
+                    i++;
+                    continue;
+                }
+                if ( j == o.skip ) {
+                    j++;
+                    continue;
+                }
+                if ( this.items[i++] != o.items[j++] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
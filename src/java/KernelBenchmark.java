@@ -0,0 +1,139 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Times the scalar kernels against Kernels.get() on random bitsets, and
+// checks that both give the same results. Usage:
+//
+//     java [--add-modules jdk.incubator.vector] KernelBenchmark [numRows] [density] [reps]
+public class KernelBenchmark
+{
+    private int     numRows;
+    private int     numWords;
+    private long[][] columns;
+    private int[]   intColumns;
+
+    public KernelBenchmark( int numRows, double density, long seed )
+    {
+        SplittableRandom rnd = new SplittableRandom( seed );
+        this.numRows    = numRows;
+        this.numWords   = ( numRows + 63 )/64;
+        this.columns    = new long[ 8 ][ this.numWords ];
+        this.intColumns = new int[ 8*numRows ];
+        for ( int j = 0; j < 8; j++ ) {
+            for ( int i = 0; i < numRows; i++ ) {
+                if ( rnd.nextDouble() < density ) {
+                    this.columns[ j ][ i >>> 6 ] |= 1L << i;
+                    this.intColumns[ j*numRows + i ] = 1;
+                }
+            }
+        }
+    }
+
+    public static void main( String[] args )
+    {
+        int    numRows = args.length > 0 ? Integer.parseInt( args[0] ) : 1 << 20;
+        double density = args.length > 1 ? Double.parseDouble( args[1] ) : 0.1;
+        int    reps    = args.length > 2 ? Integer.parseInt( args[2] ) : 20;
+
+        KernelBenchmark b      = new KernelBenchmark( numRows, density, 1 );
+        Kernels         scalar = Kernels.scalar();
+        Kernels         kernel = Kernels.get();
+        System.out.printf( "%d rows, density %.3f, %s vs %s\n",
+                           numRows, density, scalar.name(), kernel.name() );
+        System.out.printf( "%-12s %12s %12s %8s\n", "kernel", "scalar ms", "other ms", "speedup" );
+        for ( String name : new String[] { "orCount", "orInto", "andNotCount",
+                                           "orCountNew", "orBits", "orShifted",
+                                           "histogram" } ) {
+            // untimed rounds to warm up the JIT
+            for ( int r = 0; r < 5; r++ ) {
+                b.time( scalar, name, reps );
+                b.time( kernel, name, reps );
+            }
+            long[] s = b.time( scalar, name, reps );
+            long[] k = b.time( kernel, name, reps );
+            if ( s[1] != k[1] ) {
+                throw new IllegalStateException( name + ": results differ" );
+            }
+            System.out.printf( "%-12s %12.2f %12.2f %8.2f\n", name,
+                               s[0]/1e6, k[0]/1e6, (double)s[0]/k[0] );
+        }
+    }
+
+    // Runs kernel name reps times, returns the time in ns and a checksum.
+    private long[] time( Kernels k, String name, int reps )
+    {
+        long[]  dst     = new long[ this.numWords ];
+        int[]   bucket  = new int[ this.numRows ];
+        int[]   counter = new int[ 1 << 8 ];
+        long    check   = 0;
+        long    start   = System.nanoTime();
+        for ( int r = 0; r < reps; r++ ) {
+            int n = 2 + r % 7;
+            switch ( name ) {
+            case "orCount":
+                check += k.orCount( this.columns, n, 0, this.numWords );
+                break;
+            case "orInto":
+                check += k.orInto( dst, this.columns, n, this.numWords );
+                break;
+            case "andNotCount":
+                check += k.andNotCount( this.columns[0], this.columns[n-1], this.numWords );
+                break;
+            case "orCountNew":
+                Arrays.fill( dst, 0L );
+                for ( int j = 0; j < n; j++ ) {
+                    check += k.orCountNew( this.columns[j], dst, this.numWords );
+                }
+                break;
+            case "orBits":
+                Arrays.fill( bucket, 0 );
+                for ( int j = 0; j < n; j++ ) {
+                    k.orBits( bucket, this.columns[j], this.numRows, 1 << j );
+                }
+                check += Arrays.hashCode( bucket );
+                break;
+            case "orShifted":
+                Arrays.fill( bucket, 0 );
+                for ( int j = 0; j < n; j++ ) {
+                    k.orShifted( bucket, this.intColumns, j*this.numRows, this.numRows, j );
+                }
+                check += Arrays.hashCode( bucket );
+                break;
+            case "histogram":
+                Arrays.fill( bucket, 0 );
+                for ( int j = 0; j < n; j++ ) {
+                    k.orShifted( bucket, this.intColumns, j*this.numRows, this.numRows, j );
+                }
+                Arrays.fill( counter, 0 );
+                k.histogram( bucket, this.numRows, counter, 0, 1 << n );
+                check += Arrays.hashCode( counter );
+                break;
+            default:
+                throw new IllegalArgumentException( name );
+            }
+        }
+        return new long[] { System.nanoTime() - start, check };
+    }
+}
@@ -0,0 +1,158 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+// The inner loops over covers that can use SIMD instructions: OR, AND-NOT
+// and popcount over packed bitsets, and the pattern histogram of the
+// subgroup evaluators. This class has the scalar versions.
+//
+// VectorKernels in vector/ overrides them with the incubating Vector API.
+// It is kept out of this directory so that the rest compiles on any JDK;
+// compile it into the same classes directory and run with
+//
+//     javac --add-modules jdk.incubator.vector -cp classes -d classes vector/VectorKernels.java
+//     java --add-modules jdk.incubator.vector ...
+//
+// get() returns the vector kernels if the class and the module are both
+// there, and the scalar kernels otherwise, or if the system property
+// skyline.kernels is set to "scalar".
+public class Kernels
+{
+    private static final Kernels INSTANCE = load();
+
+    protected Kernels() {}
+
+    public static Kernels get()
+    {
+        return INSTANCE;
+    }
+
+    public static Kernels scalar()
+    {
+        return new Kernels();
+    }
+
+    private static Kernels load()
+    {
+        if ( "scalar".equals( System.getProperty( "skyline.kernels" ) ) ) {
+            return new Kernels();
+        }
+        try {
+            Kernels k = (Kernels)Class.forName( "VectorKernels" ).getDeclaredConstructor().newInstance();
+            System.err.printf( "Kernels: using %s\n", k.name() );
+            return k;
+        }
+        catch ( ReflectiveOperationException | LinkageError e ) {
+            // not compiled, or the module is missing
+            return new Kernels();
+        }
+    }
+
+    public String name()
+    {
+        return "scalar kernels";
+    }
+
+    // Returns the number of bits set in the union of the first n columns
+    // over words from..to-1.
+    public long orCount( long[][] columns, int n, int from, int to )
+    {
+        long count = 0;
+        for ( int w = from; w < to; w++ ) {
+            long word = 0L;
+            for ( int j = 0; j < n; j++ ) {
+                word |= columns[ j ][ w ];
+            }
+            count += Long.bitCount( word );
+        }
+        return count;
+    }
+
+    // Stores the union of the first n columns in dst and returns the number
+    // of bits set in it.
+    public long orInto( long[] dst, long[][] columns, int n, int numWords )
+    {
+        long count = 0;
+        for ( int w = 0; w < numWords; w++ ) {
+            long word = 0L;
+            for ( int j = 0; j < n; j++ ) {
+                word |= columns[ j ][ w ];
+            }
+            dst[ w ] = word;
+            count += Long.bitCount( word );
+        }
+        return count;
+    }
+
+    // Returns the number of bits set in a but not in b.
+    public long andNotCount( long[] a, long[] b, int numWords )
+    {
+        long count = 0;
+        for ( int w = 0; w < numWords; w++ ) {
+            count += Long.bitCount( a[w] & ~b[w] );
+        }
+        return count;
+    }
+
+    // Adds the bits of a to b and returns the number of bits that were new.
+    public long orCountNew( long[] a, long[] b, int numWords )
+    {
+        long count = 0;
+        for ( int w = 0; w < numWords; w++ ) {
+            count += Long.bitCount( a[w] & ~b[w] );
+            b[ w ] |= a[ w ];
+        }
+        return count;
+    }
+
+    // Sets bit in bucket[ i ] for every i < length whose bit is set in words.
+    public void orBits( int[] bucket, long[] words, int length, int bit )
+    {
+        for ( int w = 0; w < words.length; w++ ) {
+            long word = words[ w ];
+            while ( word != 0L ) {
+                int i = 64*w + Long.numberOfTrailingZeros( word );
+                if ( i >= length ) {
+                    return;
+                }
+                bucket[ i ] |= bit;
+                word &= word - 1;
+            }
+        }
+    }
+
+    // bucket[ i ] |= src[ srcOffset+i ] << shift for i < length.
+    public void orShifted( int[] bucket, int[] src, int srcOffset, int length, int shift )
+    {
+        for ( int i = 0; i < length; i++ ) {
+            bucket[ i ] |= src[ srcOffset + i ] << shift;
+        }
+    }
+
+    // Adds the number of times every value occurs in bucket[ 0..length-1 ]
+    // to counter[ offset+value ]. The values are less than numCells.
+    public void histogram( int[] bucket, int length, int[] counter, int offset, int numCells )
+    {
+        for ( int i = 0; i < length; i++ ) {
+            counter[ offset + bucket[i] ]++;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Latencies of submodularFnc by the size of the evaluated set. Every thread
+// records into its own shard, so recording takes no locks and threads do
+// not write to the same cache lines. The shards are summed when the
+// histogram is read. Reads during a run may miss the latest records.
+//
+// The latencies of a set size go into power of two buckets of nanoseconds,
+// bucket b holds latencies in [ 2^b, 2^(b+1) ).
+public class LatencyHistogram
+{
+    public static final int MAX_SIZE    = 64;  // larger sets are recorded as MAX_SIZE
+    public static final int NUM_BUCKETS = 40;  // the last bucket holds everything above
+
+    // per size: NUM_BUCKETS counts, then the total nanoseconds
+    private static final int ROW = NUM_BUCKETS + 1;
+
+    private final List<long[]> shards = new ArrayList<>();
+
+    private final ThreadLocal<long[]> shard = new ThreadLocal<long[]>() {
+            protected long[] initialValue() {
+                long[] s = new long[ (MAX_SIZE+1)*ROW ];
+                synchronized ( shards ) {
+                    shards.add( s );
+                }
+                return s;
+            }
+        };
+
+    public void record( int size, long nanos )
+    {
+        long[] s      = this.shard.get();
+        int    row    = Math.min( size, MAX_SIZE )*ROW;
+        int    bucket = Math.min( 63 - Long.numberOfLeadingZeros( nanos | 1L ), NUM_BUCKETS-1 );
+        s[ row + bucket ]++;
+        s[ row + NUM_BUCKETS ] += nanos;
+    }
+
+    // Returns the summed counts, row size holds the NUM_BUCKETS counts of
+    // that size followed by the total nanoseconds.
+    public long[][] snapshot()
+    {
+        long[][] sum = new long[ MAX_SIZE+1 ][ ROW ];
+        synchronized ( this.shards ) {
+            for ( long[] s : this.shards ) {
+                for ( int size = 0; size <= MAX_SIZE; size++ ) {
+                    for ( int b = 0; b < ROW; b++ ) {
+                        sum[ size ][ b ] += s[ size*ROW + b ];
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    // Returns a summary of every set size that has records, such as
+    // "n=1200 mean=3.1us p50=2.0us p99=16.4us". The percentiles are the
+    // upper ends of their buckets.
+    public String[] summaries()
+    {
+        long[][] sum     = snapshot();
+        String[] summary = new String[ MAX_SIZE+1 ];
+        for ( int size = 0; size <= MAX_SIZE; size++ ) {
+            long n = 0;
+            for ( int b = 0; b < NUM_BUCKETS; b++ ) {
+                n += sum[ size ][ b ];
+            }
+            if ( n == 0 ) {
+                continue;
+            }
+            summary[ size ] = String.format( "n=%d mean=%.1fus p50=%.1fus p99=%.1fus",
+                                             n, sum[ size ][ NUM_BUCKETS ]/(1e3*n),
+                                             percentile( sum[ size ], n, 0.50 )/1e3,
+                                             percentile( sum[ size ], n, 0.99 )/1e3 );
+        }
+        return summary;
+    }
+
+    private static double percentile( long[] counts, long n, double q )
+    {
+        long seen = 0;
+        for ( int b = 0; b < NUM_BUCKETS; b++ ) {
+            seen += counts[ b ];
+            if ( seen >= q*n ) {
+                return (double)( 1L << (b+1) );
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+}
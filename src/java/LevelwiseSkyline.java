@@ -33,6 +33,8 @@ public class LevelwiseSkyline extends SkylineAlg
 {
     // max size of the intermediary skyline
     private int skylineSize = Integer.MAX_VALUE;
+    // number of candidates evaluated in one call to the evaluator
+    private int batchSize   = 64;
     
     public LevelwiseSkyline() {}
 
@@ -71,6 +73,9 @@ public class LevelwiseSkyline extends SkylineAlg
         if ( config.containsKey( "f" ) ) {
             this.skylineSize = Integer.parseInt( (String)config.get( "f" ) );
         }
+        if ( config.containsKey( "b" ) ) {
+            this.batchSize = Math.max( 1, Integer.parseInt( (String)config.get( "b" ) ) );
+        }
     }
 
     private List<SkylinePoint> filterSkyline( List<SkylinePoint> skyline, boolean maxSum )
@@ -100,12 +105,23 @@ public class LevelwiseSkyline extends SkylineAlg
         Arrays.sort( candArray, getSetComparator( eval ) );
         List<SkylinePoint> skyline = new LinkedList<SkylinePoint>();
         double submBest = Double.NEGATIVE_INFINITY;
-        for( Candidate c : candArray ) {
-            double psubv = eval.submodularFnc(c.set);
-            if ( psubv > submBest ) {
-                skyline.add( new SkylinePoint( c.set, eval.sumFnc(c.set), psubv) );
-                updatePeakMemory();
-                submBest = psubv;
+        // Every candidate is evaluated, so they can go to the evaluator in
+        // batches.
+        for ( int start = 0; start < candArray.length; start += this.batchSize ) {
+            int     end   = Math.min( start + this.batchSize, candArray.length );
+            int[][] batch = new int[ end - start ][];
+            for ( int i = start; i < end; i++ ) {
+                batch[ i - start ] = candArray[ i ].set;
+            }
+            double[] values = eval.submodularFnc( batch );
+            for ( int i = start; i < end; i++ ) {
+                Candidate c     = candArray[ i ];
+                double    psubv = values[ i - start ];
+                if ( psubv > submBest ) {
+                    skyline.add( new SkylinePoint( c.set, eval.sumFnc(c.set), psubv) );
+                    updatePeakMemory();
+                    submBest = psubv;
+                }
             }
         }
         return skyline;
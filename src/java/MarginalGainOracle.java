@@ -0,0 +1,107 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.Arrays;
+
+// A set function opened at a base set. The oracle answers how much the
+// value increases when a single item is added to the base set, and items
+// can be committed to the base set one at a time. Implementations keep
+// whatever state they need so that the cost of a gain query depends on
+// the added item rather than on the whole set.
+// Oracles are not thread safe, every thread should open its own.
+public abstract class MarginalGainOracle
+{
+    private int[]  items;
+    private double value;
+
+    protected MarginalGainOracle( int[] base, double value )
+    {
+        this.items = Arrays.copyOf( base, base.length );
+        this.value = value;
+    }
+
+    // Returns f(base + item) - f(base). The item must not be in the base set.
+    public abstract double gain( int item );
+
+    // Adds item to the underlying state and returns its gain.
+    protected abstract double extend( int item );
+
+    public void commit( int item )
+    {
+        this.value += extend( item );
+        this.items  = extendSet( this.items, item );
+    }
+
+    public double value()
+    {
+        return this.value;
+    }
+
+    public int size()
+    {
+        return this.items.length;
+    }
+
+    public int[] items()
+    {
+        return Arrays.copyOf( this.items, this.items.length );
+    }
+
+    protected static int[] extendSet( int[] items, int item )
+    {
+        int[] newitems = Arrays.copyOf( items, items.length+1 );
+        newitems[ newitems.length-1 ] = item;
+        Arrays.sort( newitems );
+        return newitems;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    // Fallback for set functions that have no incremental implementation.
+    // Every gain query evaluates the extended set from scratch.
+    public static class Recomputing extends MarginalGainOracle
+    {
+        private SetFunction f;
+        private int[]       base;
+
+        public Recomputing( SetFunction f, int[] base )
+        {
+            super( base, base.length == 0 ? 0.0 : f.value( base ) );
+            this.f    = f;
+            this.base = Arrays.copyOf( base, base.length );
+        }
+
+        public double gain( int item )
+        {
+            if ( this.base.length == 0 ) {
+                return this.f.value( new int[] { item } );
+            }
+            return this.f.value( extendSet( this.base, item ) ) - this.value();
+        }
+
+        protected double extend( int item )
+        {
+            double g  = gain( item );
+            this.base = extendSet( this.base, item );
+            return g;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Marginal gains observed during a search. A record (v, T, g) says that
+// f( T + v ) - f( T ) = g, so by submodularity v adds at most g to any
+// superset of T. This is the idea of MarginalGainUB in FastSkyline, for
+// the exact search: the records tighten the bound of a node beyond what
+// the BoundProvider knows, and the bound only gets tighter as the search
+// goes on.
+//
+// Every item keeps at most capacity records, those with the smallest
+// gains. The store is shared by all threads of the parallel algorithm.
+// Record lists are immutable and replaced with compare-and-set, so
+// readers take no locks and never see a partial update.
+public class MarginalGainStore
+{
+    private final double[]                     single;
+    private final AtomicReferenceArray<Gain[]> gains;
+    private final int                          capacity;
+    private final AtomicLong                   numRecorded = new AtomicLong();
+
+    // capacity must be positive.
+    public MarginalGainStore( Evaluator eval, int capacity )
+    {
+        this.single = new double[ eval.numItems() ];
+        for ( int v = 0; v < this.single.length; v++ ) {
+            this.single[ v ] = eval.submodularFnc( v );
+        }
+        this.gains    = new AtomicReferenceArray<Gain[]>( this.single.length );
+        this.capacity = capacity;
+        for ( int v = 0; v < this.single.length; v++ ) {
+            this.gains.set( v, new Gain[ 0 ] );
+        }
+    }
+
+    public double single( int item )
+    {
+        return this.single[ item ];
+    }
+
+    public long numRecorded()
+    {
+        return this.numRecorded.get();
+    }
+
+    // Records that item adds gain to the set base. base must be sorted and
+    // is not copied.
+    public void add( int item, int[] base, double gain )
+    {
+        if ( gain >= this.single[ item ] ) {
+            return;
+        }
+        Gain record = new Gain( base, gain );
+        while ( true ) {
+            Gain[] old = this.gains.get( item );
+            Gain[] updated;
+            if ( old.length < this.capacity ) {
+                updated = Arrays.copyOf( old, old.length+1 );
+                updated[ old.length ] = record;
+            }
+            else {
+                // replace the largest gain
+                int worst = 0;
+                for ( int i = 1; i < old.length; i++ ) {
+                    if ( old[i].gain > old[ worst ].gain ) {
+                        worst = i;
+                    }
+                }
+                if ( old[ worst ].gain <= gain ) {
+                    return;
+                }
+                updated = old.clone();
+                updated[ worst ] = record;
+            }
+            if ( this.gains.compareAndSet( item, old, updated ) ) {
+                this.numRecorded.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    // Returns an upper bound of f over the sets that consist of pos[ from.. ]
+    // and from items in [ pos[0], pos[from] ), given the value of the
+    // suffix. Every such item adds at most the smallest of its singleton
+    // value and its recorded gains over subsets of the suffix.
+    public double bound( int[] pos, int from, double suffixValue )
+    {
+        double[] top   = new double[ from ];
+        int      count = 0;
+        for ( int v = pos[0]; v < pos[ from ]; v++ ) {
+            double gain = this.single[ v ];
+            if ( count == from && gain <= top[ count-1 ] ) {
+                continue;  // the records can only lower it
+            }
+            for ( Gain g : this.gains.get( v ) ) {
+                if ( g.gain < gain && isSubset( g.base, pos, from ) ) {
+                    gain = g.gain;
+                }
+            }
+            if ( count < from || gain > top[ count-1 ] ) {
+                int i = count < from ? count++ : count-1;
+                while ( i > 0 && top[ i-1 ] < gain ) {
+                    top[ i ] = top[ i-1 ];
+                    i--;
+                }
+                top[ i ] = gain;
+            }
+        }
+        double bound = suffixValue;
+        for ( int i = 0; i < count; i++ ) {
+            bound += top[ i ];
+        }
+        return bound;
+    }
+
+    // Returns true if the sorted base is a subset of the sorted pos[ from.. ].
+    private static boolean isSubset( int[] base, int[] pos, int from )
+    {
+        if ( base.length > pos.length - from ) {
+            return false;
+        }
+        int i = from;
+        for ( int b : base ) {
+            while ( i < pos.length && pos[i] < b ) {
+                i++;
+            }
+            if ( i == pos.length || pos[i] != b ) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    private static class Gain
+    {
+        final int[]  base;
+        final double gain;
+
+        Gain( int[] base, double gain )
+        {
+            this.base = base;
+            this.gain = gain;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.Arrays;
+
+// A tighter bound from the values of all pairs. By submodularity the gain
+// of v on top of the suffix S is at most its gain on top of any single
+// item of S, so
+//
+//     f( S + P ) <= f( S ) + sum over v in P of min over s in S of f( v | s )
+//
+// with f( v | s ) = f( {v,s} ) - f( s ). The bound takes the largest such
+// gains among the items before S. All pairs are evaluated up front, in
+// batches, so this pays off when evaluations are expensive and the number
+// of items is moderate; the table has n(n-1)/2 doubles.
+public class PairwiseBound implements BoundProvider
+{
+    private static final int BATCH_SIZE = 256;
+
+    private double[] single;  // f( v )
+    private double[] pair;    // f( {u,v} ) for u < v at v(v-1)/2 + u
+
+    public PairwiseBound( Evaluator eval )
+    {
+        int n = eval.numItems();
+        long numPairs = (long)n*(n-1)/2;
+        if ( numPairs > Integer.MAX_VALUE - 8 ) {
+            throw new IllegalArgumentException( "PairwiseBound: too many items, " + n );
+        }
+        this.single = new double[ n ];
+        for ( int v = 0; v < n; v++ ) {
+            this.single[ v ] = eval.submodularFnc( v );
+        }
+        this.pair = new double[ (int)numPairs ];
+        int[][] batch = new int[ BATCH_SIZE ][];
+        int     size  = 0;
+        int     done  = 0;
+        for ( int v = 1; v < n; v++ ) {
+            for ( int u = 0; u < v; u++ ) {
+                batch[ size++ ] = new int[] { u, v };
+                if ( size == BATCH_SIZE ) {
+                    System.arraycopy( eval.submodularFnc( batch ), 0, this.pair, done, size );
+                    done += size;
+                    size  = 0;
+                }
+            }
+        }
+        if ( size > 0 ) {
+            double[] values = eval.submodularFnc( Arrays.copyOf( batch, size ) );
+            System.arraycopy( values, 0, this.pair, done, size );
+        }
+        System.err.printf( "PairwiseBound: evaluated %d pairs of %d items.\n",
+                           this.pair.length, n );
+    }
+
+    public double bound( int[] pos, int from, double suffixValue )
+    {
+        // the from largest gains, in decreasing order
+        double[] top   = new double[ from ];
+        int      count = 0;
+        for ( int v = 0; v < pos[ from ]; v++ ) {
+            double gain = this.single[ v ];
+            for ( int i = from; i < pos.length; i++ ) {
+                int s = pos[ i ];
+                gain = Math.min( gain, this.pair[ (int)( (long)s*(s-1)/2 + v ) ] - this.single[ s ] );
+            }
+            if ( count < from || gain > top[ count-1 ] ) {
+                int i = count < from ? count++ : count-1;
+                while ( i > 0 && top[ i-1 ] < gain ) {
+                    top[ i ] = top[ i-1 ];
+                    i--;
+                }
+                top[ i ] = gain;
+            }
+        }
+        double bound = suffixValue;
+        for ( int i = 0; i < count; i++ ) {
+            bound += top[ i ];
+        }
+        return bound;
+    }
+}
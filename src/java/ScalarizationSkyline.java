@@ -64,6 +64,10 @@ public class ScalarizationSkyline extends SkylineAlg
                 public double value( int[] set ) {
                     return eval.sumFnc( set ) + w*eval.submodularFnc( set );
                 }
+
+                public MarginalGainOracle openOracle( int[] base ) {
+                    return weightedOracle( eval, base, 1.0, w, eval.sumFnc( base ) );
+                }
             };
         }
         else {
@@ -82,7 +86,30 @@ public class ScalarizationSkyline extends SkylineAlg
                 public double value( int[] set ) {
                     return (M-eval.sumFnc( set )) + w*eval.submodularFnc( set );
                 }
+
+                public MarginalGainOracle openOracle( int[] base ) {
+                    return weightedOracle( eval, base, -1.0, w, M-eval.sumFnc( base ) );
+                }
             };
         }
     }
+
+    // Oracle for sumValue + sumWeight*sumFnc + w*submodularFnc, where the
+    // submodular part is evaluated incrementally by the Evaluator.
+    private MarginalGainOracle weightedOracle( Evaluator eval, int[] base, double sumWeight,
+                                               double w, double sumValue )
+    {
+        MarginalGainOracle subm = eval.openOracle( base );
+        return new MarginalGainOracle( base, sumValue + w*subm.value() ) {
+            public double gain( int item ) {
+                return sumWeight*eval.sumFnc( item ) + w*subm.gain( item );
+            }
+
+            protected double extend( int item ) {
+                double g = gain( item );
+                subm.commit( item );
+                return g;
+            }
+        };
+    }
 }
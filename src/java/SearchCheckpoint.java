@@ -0,0 +1,163 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
+import java.util.List;
+
+// A checkpoint of an exact search, so that a long run can be resumed after
+// a restart. The file has a header that identifies the search, the number
+// of nodes expanded, the skyline found so far and the nodes of the border
+// in the packed format of the border, all big endian. A checkpoint is
+// written to a temporary file that is then moved over the previous one, so
+// a crash during a write leaves the previous checkpoint intact.
+//
+// Checkpoints are written at most every minInterval seconds, and at most
+// MAX_OVERHEAD of the time goes to writing them: if a write takes w
+// seconds, the next one is due w/MAX_OVERHEAD seconds later at the
+// earliest.
+public class SearchCheckpoint
+{
+    private static final long   MAGIC        = 0x534b594c494e4543L;  // "SKYLINEC"
+    private static final int    VERSION      = 1;
+    private static final double MAX_OVERHEAD = 0.02;
+
+    // Writes the part of the checkpoint that belongs to the border.
+    public interface Body
+    {
+        public void write( DataOutputStream out ) throws IOException;
+    }
+
+    private final File file;
+    private final long searchId;
+    private final long minInterval;  // nanoseconds
+    private long       nextDue;
+
+    public SearchCheckpoint( File file, long searchId, double minInterval )
+    {
+        this.file        = file;
+        this.searchId    = searchId;
+        this.minInterval = (long)( minInterval*1e9 );
+        this.nextDue     = System.nanoTime() + this.minInterval;
+    }
+
+    public File file()
+    {
+        return this.file;
+    }
+
+    public boolean exists()
+    {
+        return this.file.exists();
+    }
+
+    public boolean isDue()
+    {
+        return System.nanoTime() - this.nextDue >= 0;
+    }
+
+    public void write( long numExpanded, List<SkylinePoint> skyline, Body border )
+        throws IOException
+    {
+        long begTime = System.nanoTime();
+        File target  = this.file.getAbsoluteFile();
+        File tmp     = File.createTempFile( "." + target.getName() + ".", ".tmp", target.getParentFile() );
+        try ( FileOutputStream fos = new FileOutputStream( tmp );
+              DataOutputStream out = new DataOutputStream( new BufferedOutputStream( fos, 1 << 20 ) ) ) {
+            out.writeLong( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( this.searchId );
+            out.writeLong( numExpanded );
+            out.writeInt( skyline.size() );
+            for ( SkylinePoint p : skyline ) {
+                out.writeInt( p.size() );
+                for ( int i = 0; i < p.size(); i++ ) {
+                    out.writeInt( p.itemAt( i ) );
+                }
+                out.writeDouble( p.sumValue() );
+                out.writeDouble( p.submodularValue() );
+            }
+            border.write( out );
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move( tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+        long took    = System.nanoTime() - begTime;
+        this.nextDue = System.nanoTime() + Math.max( this.minInterval, (long)( took/MAX_OVERHEAD ) );
+        System.err.printf( "SearchCheckpoint: wrote %s in %.2f s.\n", this.file, took/1e9 );
+    }
+
+    // Opens the checkpoint for reading and checks that it is from this
+    // search. The stream is left at the number of nodes expanded, read the
+    // rest with readSkyline and the border.
+    public DataInputStream open()
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream( new FileInputStream( this.file ), 1 << 20 ) );
+        try {
+            if ( in.readLong() != MAGIC ) {
+                throw new IOException( "not a checkpoint" );
+            }
+            int version = in.readInt();
+            if ( version != VERSION ) {
+                throw new IOException( String.format( "unsupported checkpoint version %d", version ) );
+            }
+            if ( in.readLong() != this.searchId ) {
+                throw new IOException( "checkpoint of another search" );
+            }
+        }
+        catch ( IOException e ) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    public static List<SkylinePoint> readSkyline( DataInputStream in )
+        throws IOException
+    {
+        List<SkylinePoint> skyline = new LinkedList<SkylinePoint>();
+        int numPoints = in.readInt();
+        for ( int p = 0; p < numPoints; p++ ) {
+            int[] items = new int[ in.readInt() ];
+            for ( int i = 0; i < items.length; i++ ) {
+                items[ i ] = in.readInt();
+            }
+            double sumValue  = in.readDouble();
+            double submValue = in.readDouble();
+            skyline.add( new SkylinePoint( items, sumValue, submValue ) );
+        }
+        return skyline;
+    }
+}
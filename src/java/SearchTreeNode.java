@@ -1,11 +1,11 @@
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
 
 public class SearchTreeNode
 {
     public int[]  pos;
     public int    j;
+    // eval.sumFnc( pos ), NaN until it is known
+    private double sum = Double.NaN;
         
     public SearchTreeNode( int[] pos, int j )
     {
@@ -13,6 +13,21 @@ public class SearchTreeNode
         this.j   = j;
     }
 
+    public SearchTreeNode( int[] pos, int j, double sum )
+    {
+        this.pos = pos;
+        this.j   = j;
+        this.sum = sum;
+    }
+
+    public double sum( Evaluator eval )
+    {
+        if ( Double.isNaN( this.sum ) ) {
+            this.sum = eval.sumFnc( this.pos );
+        }
+        return this.sum;
+    }
+
     public int size()
     {
         return this.pos.length;
@@ -46,12 +61,14 @@ public class SearchTreeNode
         return Arrays.copyOf( this.pos, this.pos.length );
     }
 
-    public List<SearchTreeNode> children( Evaluator eval )
+    // Stores the children in out, which has room for two, and returns their
+    // number.
+    public int children( Evaluator eval, SearchTreeNode[] out )
     {
-        List<SearchTreeNode> children = new LinkedList<SearchTreeNode>();
+        int n = 0;
         // left child exists if j > 0.
         if ( this.j > 0 ) {
-            children.add( child( this.j-1 ) );
+            out[ n++ ] = child( this.j-1, eval );
         }
         // right child exists if pos.pos[j] + 1 < pos.pos[j+1]
         int x;
@@ -62,9 +79,9 @@ public class SearchTreeNode
             x = this.pos[ this.j + 1 ];
         }
         if ( this.pos[ this.j ] + 1 < x ) {
-            children.add( child( this.j ) );
+            out[ n++ ] = child( this.j, eval );
         }
-        return children;
+        return n;
     }
     
     // This mimics the hash function used in Python for tuples.
@@ -90,10 +107,16 @@ public class SearchTreeNode
         return Arrays.toString( this.pos ) + ", j = " + this.j;
     }
 
-    private SearchTreeNode child( int j )
+    // The sum of the child is derived from ours, sumFnc is additive in all
+    // evaluators.
+    private SearchTreeNode child( int j, Evaluator eval )
     {
         int[] newPos = Arrays.copyOf( this.pos, this.pos.length );
         newPos[j]++;
-        return new SearchTreeNode( newPos, j );
+        SearchTreeNode child = new SearchTreeNode( newPos, j );
+        if ( !Double.isNaN( this.sum ) ) {
+            child.sum = this.sum - eval.sumFnc( this.pos[j] ) + eval.sumFnc( newPos[j] );
+        }
+        return child;
     }
 }
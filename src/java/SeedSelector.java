@@ -42,6 +42,9 @@ public class SeedSelector
                 public double value( int[] items ) {
                     return eval.submodularFnc( items );
                 }
+                public MarginalGainOracle openOracle( int[] base ) {
+                    return eval.openOracle( base );
+                }
             } );
 
         // Finally, re-map seed identifiers to original ones in case
@@ -20,42 +20,111 @@
 // OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
 // THE SOFTWARE.
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.BitSet;
 
+// Sets are the columns of a 0/1 matrix over the universe. A column is stored
+// either as a packed bitset of univSize bits or, if it has few rows, as the
+// sorted list of its rows, so memory scales with the number of nonzeros.
+// Coverage of dense columns is an OR over words followed by a popcount,
+// sparse columns are added to that one row at a time.
 public class SetCoverEvaluator extends Evaluator
 {
+    // A column is stored sparse if its rows take less space than its bitset.
+    private static final int SPARSE_ROWS_PER_WORD = 2;
+    // number of words of a column kept in the cache by the batched count
+    private static final int BLOCK_WORDS = 1024;
+
     public double[]  values;
-    public IntMatrix sets;
+    private long[][] dense;     // dense[item] is the column of item as a bitset, or null
+    private int[][]  sparse;    // sparse[item] are the rows of item, or null
+    private int[]    setSize;   // number of rows in every column
+    private int      numWords;
+    private Kernels  kernels = Kernels.get();
+
+    // Per-thread buffers of submodularFnc.
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+            protected Scratch initialValue() {
+                return new Scratch();
+            }
+        };
     
     public void init( Map<String,Object> options ) throws Exception
     {
         super.init( options ); // this gets maxSum
-        double[] values = (double[])options.get( "values" );
+        double[] values   = (double[])options.get( "values" );
+        int      univSize = Integer.parseInt((String)options.get( "univSize" ));
+        if ( options.get( "colPtr" ) instanceof int[] ) {
+            // sparse input, see initSparse
+            initSparse( values, (int[])options.get( "colPtr" ), (int[])options.get( "rowIdx" ),
+                        univSize );
+        }
+        else {
+            init( values, (int[])options.get( "scdata" ), univSize,
+                  Integer.parseInt((String)options.get( "numSets" )) );
+        }
+    }
 
-        this.origItem = Utils.sortedIdx( values, this.maxSum );
+    public void init( double[] values, int[] scdata, int univSize, int numSets )
+    {
+        initValues( values, univSize );
+        // In our set-cover instance sets are represented by columns of scdata,
+        // which is in column major order. Columns are stored in sorted order.
+        int[] rows = new int[ univSize ];
+        for ( int item = 0; item < numSets; item++ ) {
+            int offset = this.origItem[ item ]*univSize;
+            int size   = 0;
+            for ( int row = 0; row < univSize; row++ ) {
+                if ( scdata[ offset + row ] == 1 ) {
+                    rows[ size++ ] = row;
+                }
+            }
+            setColumn( item, rows, 0, size );
+        }
+    }
+
+    // Sets in compressed sparse column format: the rows of set j are
+    // rowIdx[ colPtr[j] .. colPtr[j+1]-1 ], 0-based. This is the layout of
+    // the p and i slots of a dgCMatrix in R.
+    public void initSparse( double[] values, int[] colPtr, int[] rowIdx, int univSize )
+    {
+        initValues( values, univSize );
+        for ( int item = 0; item < values.length; item++ ) {
+            int col = this.origItem[ item ];
+            int[] rows = Arrays.copyOfRange( rowIdx, colPtr[col], colPtr[col+1] );
+            Arrays.sort( rows );
+            setColumn( item, rows, 0, rows.length );
+        }
+    }
 
+    private void initValues( double[] values, int univSize )
+    {
+        this.origItem = Utils.sortedIdx( values, this.maxSum );
         this.values = new double[ values.length ];
         for ( int i = 0; i < values.length; i++ ) {
             this.values[ i ] = values[ this.origItem[i] ];
         }
-
-	// In our set-cover instance sets are represented by columns.
-        this.sets = new IntMatrix( (int[])options.get( "scdata" ),
-                                   Integer.parseInt((String)options.get( "univSize" )),
-                                   Integer.parseInt((String)options.get( "numSets" )) );
-        this.sets = Utils.rearrangeColumns( this.sets, this.origItem );
+        this.numWords = (univSize + 63)/64;
+        this.dense    = new long[ values.length ][];
+        this.sparse   = new int[ values.length ][];
+        this.setSize  = new int[ values.length ];
     }
 
-    public void init( double[] values, int[] scdata, int univSize, int numSets )
+    // Stores rows[ begin .. end-1 ], which are sorted, as the column of item.
+    private void setColumn( int item, int[] rows, int begin, int end )
     {
-	this.origItem = Utils.sortedIdx( values, this.maxSum );
-	this.values = new double[ values.length ];
-	for ( int i = 0; i < values.length; i++ ) {
-	    this.values[ i ] = values[ this.origItem[i] ];
-	}
-	this.sets = new IntMatrix( scdata, univSize, numSets );
-	this.sets = Utils.rearrangeColumns( this.sets, this.origItem );
+        int size = end - begin;
+        this.setSize[ item ] = size;
+        if ( size < SPARSE_ROWS_PER_WORD*this.numWords ) {
+            this.sparse[ item ] = Arrays.copyOfRange( rows, begin, end );
+        }
+        else {
+            long[] words = new long[ this.numWords ];
+            for ( int i = begin; i < end; i++ ) {
+                words[ rows[i] >>> 6 ] |= 1L << rows[i];
+            }
+            this.dense[ item ] = words;
+        }
     }
 
     public int numItems()
@@ -65,12 +134,12 @@ public class SetCoverEvaluator extends Evaluator
 
     public double sumFnc( int item )
     {
-        this.sumCalls++;
+        this.sumCalls.increment();
         return this.values[ item ];
     }
 
     public double sumFnc( int[] items ) {
-        this.sumCalls++;
+        this.sumCalls.increment();
         double s = 0.0;
         for ( int i = 0; i < items.length; i++ ) {
             s += this.values[ items[i] ];
@@ -80,25 +149,180 @@ public class SetCoverEvaluator extends Evaluator
 
     public double submodularFnc( int item )
     {
-        this.submCalls++;
-        double s = 0.0;
-        for ( int i = 0; i < this.sets.nrow(); i++ ) {
-            s += this.sets.get( i, item );
-        }
-        return s;
+        this.submCalls.increment();
+        return this.setSize[ item ];
     }
 
     public double submodularFnc( int[] items )
     {
-        this.submCalls++;
-        BitSet bs = new BitSet();
+        this.submCalls.increment();
+        long   start = startTimer();
+        double value = coverSize( items );
+        stopTimer( items.length, 1, start );
+        return value;
+    }
+
+    // Returns the number of rows covered by items.
+    private long coverSize( int[] items )
+    {
+        if ( items.length == 1 ) {
+            return this.setSize[ items[0] ];
+        }
+        Scratch  s        = this.scratch.get();
+        long[]   covered  = s.covered( this.numWords );
+        long[][] columns  = s.columns( items.length );
+        long     count    = 0;
+        int      numDense = 0;
         for ( int item : items ) {
-            for ( int row = 0; row < this.sets.nrow(); row++ ) {
-                if ( this.sets.get( row, item )==1 ) {
-                    bs.set( row );
+            if ( this.dense[ item ] != null ) {
+                columns[ numDense++ ] = this.dense[ item ];
+            }
+        }
+        if ( numDense == items.length ) {
+            return this.kernels.orCount( columns, numDense, 0, this.numWords );
+        }
+        if ( numDense > 0 ) {
+            count = this.kernels.orInto( covered, columns, numDense, this.numWords );
+        }
+        for ( int item : items ) {
+            if ( this.sparse[ item ] != null ) {
+                count += cover( covered, this.sparse[ item ] );
+            }
+        }
+        // leave covered all zero for the next call
+        if ( numDense > 0 ) {
+            Arrays.fill( covered, 0L );
+        }
+        else {
+            for ( int item : items ) {
+                for ( int row : this.sparse[ item ] ) {
+                    covered[ row >>> 6 ] = 0L;
                 }
             }
         }
-        return bs.cardinality();
+        return count;
+    }
+
+    // Sets whose columns are all dense are counted together in one pass over
+    // the words, the others one at a time as above.
+    public double[] submodularFnc( int[][] itemsets )
+    {
+        double[] values = new double[ itemsets.length ];
+        int[]    batch  = new int[ itemsets.length ];
+        int      n      = 0;
+        for ( int i = 0; i < itemsets.length; i++ ) {
+            boolean allDense = itemsets[ i ].length > 1;
+            for ( int item : itemsets[ i ] ) {
+                allDense &= ( this.dense[ item ] != null );
+            }
+            if ( allDense ) {
+                batch[ n++ ] = i;
+            }
+            else {
+                values[ i ] = submodularFnc( itemsets[ i ] );
+            }
+        }
+        this.submCalls.add( n );
+        long       start   = startTimer();
+        long[]     count   = new long[ n ];
+        long[][][] columns = new long[ n ][][];
+        for ( int b = 0; b < n; b++ ) {
+            int[] items = itemsets[ batch[b] ];
+            columns[ b ] = new long[ items.length ][];
+            for ( int j = 0; j < items.length; j++ ) {
+                columns[ b ][ j ] = this.dense[ items[j] ];
+            }
+        }
+        for ( int from = 0; from < this.numWords; from += BLOCK_WORDS ) {
+            int to = Math.min( from + BLOCK_WORDS, this.numWords );
+            for ( int b = 0; b < n; b++ ) {
+                count[ b ] += this.kernels.orCount( columns[b], columns[b].length, from, to );
+            }
+        }
+        for ( int b = 0; b < n; b++ ) {
+            values[ batch[b] ] = count[ b ];
+        }
+        stopTimer( itemsets, batch, n, start );
+        return values;
+    }
+
+    // Adds rows to covered and returns the number of new rows.
+    private static int cover( long[] covered, int[] rows )
+    {
+        int count = 0;
+        for ( int row : rows ) {
+            long bit = 1L << row;
+            if ( (covered[ row >>> 6 ] & bit) == 0 ) {
+                covered[ row >>> 6 ] |= bit;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class Scratch
+    {
+        private long[]   covered = new long[ 0 ];  // all zero between calls
+        private long[][] columns = new long[ 1 ][];
+
+        public long[] covered( int numWords )
+        {
+            if ( this.covered.length != numWords ) {
+                // first call, or the evaluator was initialised again
+                this.covered = new long[ numWords ];
+            }
+            return this.covered;
+        }
+
+        public long[][] columns( int size )
+        {
+            if ( this.columns.length < size ) {
+                this.columns = new long[ size ][];
+            }
+            return this.columns;
+        }
+    }
+
+    public MarginalGainOracle openOracle( int[] base )
+    {
+        return new CoverGainOracle( base );
+    }
+
+    // Keeps the rows covered by the base set.
+    private class CoverGainOracle extends MarginalGainOracle
+    {
+        private long[] covered;
+
+        public CoverGainOracle( int[] base )
+        {
+            super( base, base.length == 0 ? 0.0 : submodularFnc( base ) );
+            this.covered = new long[ numWords ];
+            for ( int item : base ) {
+                extend( item );
+            }
+        }
+
+        public double gain( int item )
+        {
+            submCalls.increment();
+            long count = 0;
+            if ( sparse[ item ] != null ) {
+                for ( int row : sparse[ item ] ) {
+                    if ( (this.covered[ row >>> 6 ] & (1L << row)) == 0 ) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            return kernels.andNotCount( dense[ item ], this.covered, numWords );
+        }
+
+        protected double extend( int item )
+        {
+            if ( sparse[ item ] != null ) {
+                return cover( this.covered, sparse[ item ] );
+            }
+            return kernels.orCountNew( dense[ item ], this.covered, numWords );
+        }
     }
 }
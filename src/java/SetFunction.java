@@ -3,4 +3,9 @@ public interface SetFunction
     public double value( int item );
     
     public double value( int[] set );
+
+    public default MarginalGainOracle openOracle( int[] base )
+    {
+        return new MarginalGainOracle.Recomputing( this, base );
+    }
 }
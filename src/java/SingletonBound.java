@@ -0,0 +1,59 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+// The bound of the suffix value plus the largest singleton values: by
+// submodularity f( S + P ) <= f( S ) + sum of f( v ) over v in P. The sums
+// of the largest singletons before every item are tabulated up front.
+public class SingletonBound implements BoundProvider
+{
+    // B(x,i) is the sum of the i+1 largest singleton values of items 0..x.
+    private DoubleMatrix B;
+
+    public SingletonBound( Evaluator eval, int k )
+    {
+        double[] tmp = new double[ eval.numItems() ];
+        for ( int i = 0; i < tmp.length; i++ ) {
+            tmp[i] = eval.submodularFnc( i );
+        }
+        this.B = new DoubleMatrix( tmp.length, k-1 );
+        for ( int x = 1; x < tmp.length; x++ ) {
+            int j = x;
+            // This loop makes sure the (x+1)-length prefix of tmp
+            // is always sorted in decreasing order.
+            while ( j > 0 && tmp[j] > tmp[j-1] ) {
+                double foo = tmp[j];
+                tmp[j]     = tmp[j-1];
+                tmp[j-1]   = foo;
+                j--;
+            }
+            this.B.set( x, 0, tmp[0] );
+            for ( int i = 1; i < Math.min(x, k-1); i++ ) {
+                this.B.set( x, i, this.B.get( x, i-1 ) + tmp[i] );
+            }
+        }
+    }
+
+    public double bound( int[] pos, int from, double suffixValue )
+    {
+        return this.B.get( pos[ from ], from-1 ) + suffixValue;
+    }
+}
@@ -44,11 +44,13 @@ public class Skyline
         this.algorithms.put( "fast",      new FastSkyline() );
         this.algorithms.put( "parallel",  new ExactSkylineParallel() );
         this.algorithms.put( "scalar",    new ScalarizationSkyline() );
+        this.algorithms.put( "dfs",       new DepthFirstSkyline() );
         
-        this.evaluators.put( "sgset",    new SubgroupSetEvaluatorIntCover() );
-        this.evaluators.put( "sgsetbit", new SubgroupSetEvaluatorBitCover() );
-        this.evaluators.put( "infmax",   new InfmaxEvaluator() );
-        this.evaluators.put( "setcover", new SetCoverEvaluator() );
+        this.evaluators.put( "sgset",     new SubgroupSetEvaluatorIntCover() );
+        this.evaluators.put( "sgsetbit",  new SubgroupSetEvaluatorBitCover() );
+        this.evaluators.put( "sgsetword", new SubgroupSetEvaluatorWordCover() );
+        this.evaluators.put( "infmax",    new InfmaxEvaluator() );
+        this.evaluators.put( "setcover",  new SetCoverEvaluator() );
     }
 
     public void setOption( String optname, String value )
@@ -88,6 +90,13 @@ public class Skyline
         alg.configure( this.opts );
 
         Evaluator eval = this.evaluators.get( (String)this.opts.get( "e" ) );
+        if ( this.opts.containsKey( "cache" ) ) {
+            // memoize submodularFnc in a cache of the given size in MB
+            long capacity = Long.parseLong( (String)this.opts.get( "cache" ) ) << 20;
+            eval = new CachingEvaluator( eval, capacity );
+        }
+        // evaluators may depend on the itemset size, see SubgroupSetEvaluator
+        this.opts.put( "k", String.valueOf( k ) );
         eval.init( this.opts );
 
         double[] sl = Utils.skylineAsArray( alg.computeSkyline( k, eval ) );
@@ -34,8 +34,25 @@ import java.util.Map;
 
 public abstract class SubgroupSetEvaluator extends Evaluator
 {
+    // Itemsets larger than this cannot be evaluated, see sparseEntropy.
+    public static final int MAX_ITEMSET_SIZE = 64;
+    // Beyond this itemset size the smoothing of the empty cells dominates the
+    // entropy, see cellTerm. A warning is printed at init for such k.
+    public static final int SMOOTHING_WARN_SIZE = 30;
+
     protected double[]     quality;
     protected int          nrow;
+
+    // Row partitions of recently evaluated itemsets, null if not in use.
+    private ItemSetCache<Partition> partitionCache = null;
+
+    // Evaluation of itemsets reuses per-thread buffers, so that the hot path
+    // allocates nothing and the evaluator can be shared between threads.
+    protected final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+            protected Scratch initialValue() {
+                return new Scratch();
+            }
+        };
     
     public SubgroupSetEvaluator() { };
 
@@ -45,6 +62,20 @@ public abstract class SubgroupSetEvaluator extends Evaluator
         super.init( options );
         String stats2File = (String)options.get( "q" );
         init( stats2File );
+        if ( options.containsKey( "k" ) ) {
+            int k = Integer.parseInt( String.valueOf( options.get( "k" ) ) );
+            if ( k >= SMOOTHING_WARN_SIZE ) {
+                System.err.printf( "SubgroupSetEvaluator: warning: itemsets of size %d have 2^%d patterns, " +
+                                   "the smoothing of the empty ones adds %.0f rows and dominates the entropy\n",
+                                   k, k, Math.scalb( 0.000001, k ) );
+            }
+        }
+        // The number of row partitions to cache. Every partition takes nrow
+        // ints, so this is off by default.
+        if ( options.containsKey( "pcache" ) ) {
+            int capacity = Integer.parseInt( (String)options.get( "pcache" ) );
+            this.partitionCache = capacity > 0 ? new ItemSetCache<Partition>( capacity ) : null;
+        }
     }
     
     protected void init( String stats2File )
@@ -61,13 +92,13 @@ public abstract class SubgroupSetEvaluator extends Evaluator
 
     public double sumFnc( int item )
     {
-        this.sumCalls++;
+        this.sumCalls.increment();
         return this.quality[item];
     }
     
     public double sumFnc( int[] itemset )
     {
-        this.sumCalls++;
+        this.sumCalls.increment();
         double s = 0.0;
         for ( int item : itemset ) {
             s += this.quality[ item ];
@@ -77,19 +108,76 @@ public abstract class SubgroupSetEvaluator extends Evaluator
 
     public double submodularFnc( int item )
     {
-        this.submCalls++;
+        this.submCalls.increment();
+        long start    = startTimer();
         int ones      = countOnes( item );
         int zeros     = this.nrow - ones;
         double N      = this.nrow * 1.000001;
         double pOnes  = ((double)ones)*1.000001/N;
         double pZeros = ((double)zeros)*1.000001/N;
-        return -1.0 * ( pOnes * Math.log10(pOnes) + pZeros * Math.log10(pZeros) ) / Math.log10(2);
+        double value  = -1.0 * ( pOnes * Math.log10(pOnes) + pZeros * Math.log10(pZeros) ) / Math.log10(2);
+        stopTimer( 1, 1, start );
+        return value;
     }
 
     public double submodularFnc( int[] itemset )
     {
-        this.submCalls++;
-        return calculateEntropy( fillCounters( itemset ) );
+        this.submCalls.increment();
+        long   start = startTimer();
+        double value = entropy( itemset, this.scratch.get() );
+        stopTimer( itemset.length, 1, start );
+        return value;
+    }
+
+    private double entropy( int[] itemset, Scratch s )
+    {
+        if ( this.partitionCache != null && itemset.length > 1 ) {
+            return cachedEntropy( itemset, s );
+        }
+        if ( itemset.length >= 31 || (1 << itemset.length) > this.nrow ) {
+            // most of the 2^k cells would be empty
+            return sparseEntropy( itemset, s );
+        }
+        int[] counter = s.counter( 1 << itemset.length );
+        fillCounters( itemset, counter, 0, s );
+        return calculateEntropy( counter, 0, 1 << itemset.length );
+    }
+
+    // Counts the patterns of all itemsets with the dense counter in one call
+    // to fillCounters, so that evaluators can do it in one pass over the
+    // covers. The counters of the itemsets are stored one after another.
+    public double[] submodularFnc( int[][] itemsets )
+    {
+        double[] values = new double[ itemsets.length ];
+        Scratch  s      = this.scratch.get();
+        int[][]  dense  = new int[ itemsets.length ][];
+        int[]    index  = new int[ itemsets.length ];
+        int[]    offset = new int[ itemsets.length+1 ];
+        int      n      = 0;
+        for ( int i = 0; i < itemsets.length; i++ ) {
+            int[] itemset = itemsets[ i ];
+            if ( this.partitionCache != null || itemset.length >= 31 ||
+                 (1 << itemset.length) > this.nrow ) {
+                values[ i ] = submodularFnc( itemset );
+            }
+            else {
+                dense[ n ]    = itemset;
+                index[ n ]    = i;
+                offset[ n+1 ] = offset[ n ] + (1 << itemset.length);
+                n++;
+            }
+        }
+        if ( n > 0 ) {
+            this.submCalls.add( n );
+            long  start   = startTimer();
+            int[] counter = s.counter( offset[n] );
+            fillCounters( dense, n, counter, offset, s );
+            for ( int j = 0; j < n; j++ ) {
+                values[ index[j] ] = calculateEntropy( counter, offset[j], offset[j+1] - offset[j] );
+            }
+            stopTimer( itemsets, index, n, start );
+        }
+        return values;
     }
 
     public int numItems()
@@ -97,22 +185,416 @@ public abstract class SubgroupSetEvaluator extends Evaluator
         return this.quality.length;
     }
 
+    public Map<String,String> getStats()
+    {
+        Map<String,String> stats = super.getStats();
+        if ( this.partitionCache != null ) {
+            stats.put( "pcacheHits", String.valueOf( this.partitionCache.hits() ) );
+            stats.put( "pcacheMisses", String.valueOf( this.partitionCache.misses() ) );
+        }
+        return stats;
+    }
+
     protected abstract int countOnes( int item );
     
-    protected abstract int[] fillCounters( int[] itemset );
+    // Adds the number of rows with every pattern of itemset to counter, the
+    // count of pattern p goes to counter[ offset+p ]. Bit j of a pattern is
+    // set if the row is covered by itemset[j]. The counter is zero on entry.
+    protected abstract void fillCounters( int[] itemset, int[] counter, int offset, Scratch s );
+
+    // Same as above for the first n itemsets, the counts of itemsets[i] start
+    // at offset[i]. Evaluators that can count all itemsets in one pass over
+    // the covers override this.
+    protected void fillCounters( int[][] itemsets, int n, int[] counter, int[] offset, Scratch s )
+    {
+        for ( int i = 0; i < n; i++ ) {
+            fillCounters( itemsets[i], counter, offset[i], s );
+        }
+    }
+
+    // Returns the rows covered by item in increasing order.
+    protected abstract int[] coverRows( int item );
+
+    public MarginalGainOracle openOracle( int[] base )
+    {
+        return new PartitionOracle( base );
+    }
 
-    private double calculateEntropy( int[] counter )
+    private double calculateEntropy( int[] counter, int offset, int numCells )
     {
         double entropy = 0.0;
         double N       = this.nrow*1.000001;
-        for ( int i = 0; i < counter.length; i++ ) {
-            double p = ((double)counter[ i ] + 0.000001)/N;
+        for ( int i = 0; i < numCells; i++ ) {
+            double p = ((double)counter[ offset+i ] + 0.000001)/N;
             entropy += p * Math.log10(p);
         }
         // convert to base-2 log and positive value
         return -1.0*(entropy/Math.log10( 2.0 ));
     }
 
+    // Computes the entropy from the patterns that occur in the data only.
+    // The pattern of every row is a signature with bit j set if the row is
+    // covered by itemset[j]. Signatures are radix sorted so that equal
+    // patterns are adjacent, and every run is one non-empty cell.
+    private double sparseEntropy( int[] itemset, Scratch s )
+    {
+        if ( itemset.length > MAX_ITEMSET_SIZE ) {
+            throw new IllegalArgumentException( String.format(
+                "SubgroupSetEvaluator: itemsets of size %d not supported (max %d)",
+                itemset.length, MAX_ITEMSET_SIZE ) );
+        }
+        long[] sig = s.signatures( this.nrow );
+        for ( int j = 0; j < itemset.length; j++ ) {
+            long bit = 1L << j;
+            for ( int row : coverRows( itemset[j] ) ) {
+                sig[ row ] |= bit;
+            }
+        }
+        sig = radixSort( sig, s.sortBuffer( this.nrow ), s.radixCount, this.nrow, itemset.length );
+
+        double sumTerms = 0.0;
+        int    nonEmpty = 0;
+        int    begin    = 0;
+        for ( int i = 1; i <= this.nrow; i++ ) {
+            if ( i == this.nrow || sig[ i ] != sig[ begin ] ) {
+                sumTerms += cellTerm( i - begin );
+                nonEmpty++;
+                begin = i;
+            }
+        }
+        return calculateEntropy( sumTerms, Math.scalb( 1.0, itemset.length ), nonEmpty );
+    }
+
+    // LSD radix sort of the first n values of a, which have only the lowest
+    // numBits bits set, using tmp as the second buffer and count for the
+    // 256+1 digit counts. Returns the buffer that holds the sorted values.
+    private static long[] radixSort( long[] a, long[] tmp, int[] count, int n, int numBits )
+    {
+        for ( int shift = 0; shift < numBits; shift += 8 ) {
+            Arrays.fill( count, 0 );
+            for ( int i = 0; i < n; i++ ) {
+                count[ (int)((a[i] >>> shift) & 0xff) + 1 ]++;
+            }
+            for ( int d = 0; d < 256; d++ ) {
+                count[ d+1 ] += count[ d ];
+            }
+            for ( int i = 0; i < n; i++ ) {
+                tmp[ count[ (int)((a[i] >>> shift) & 0xff) ]++ ] = a[ i ];
+            }
+            long[] t = a; a = tmp; tmp = t;
+        }
+        return a;
+    }
+
+    // The term of a single counter in calculateEntropy. Every one of the 2^k
+    // cells is smoothed by 1e-6 rows, including the empty ones, so the empty
+    // cells add about 2^k*1e-6 rows in total. This is negligible for small k
+    // but dominates the entropy for k around SMOOTHING_WARN_SIZE and above.
+    // The dense, sparse and partition paths all use the same definition, so
+    // that the value does not depend on which path evaluates an itemset.
+    private double cellTerm( int count )
+    {
+        double p = ((double)count + 0.000001)/(this.nrow*1.000001);
+        return p * Math.log10(p);
+    }
+
+    // Same as calculateEntropy when the counter array has numCells counters,
+    // nonEmpty of which are non-zero and sum up to sumTerms in cellTerm.
+    private double calculateEntropy( double sumTerms, double numCells, int nonEmpty )
+    {
+        double entropy = sumTerms + (numCells - nonEmpty)*cellTerm( 0 );
+        return -1.0*(entropy/Math.log10( 2.0 ));
+    }
+
+    // Evaluates itemset from the cached partition of an itemset that differs
+    // from it by one item, so that only the cover of that item is scanned.
+    // Itemsets are sorted, so the subsets without one item are looked up
+    // starting from the prefix. If none is cached, the partition of the prefix
+    // is built from the longest cached prefix and cached. The partition of
+    // itemset itself is cached lazily, it is only built if it is extended.
+    // Every call counts as one hit or miss, a hit if a subset without one
+    // item is cached.
+    private double cachedEntropy( int[] itemset, Scratch s )
+    {
+        int k = itemset.length;
+        for ( int skip = k-1; skip >= 0; skip-- ) {
+            Partition p = this.partitionCache.peek( itemset, k, skip );
+            if ( p != null ) {
+                this.partitionCache.count( true );
+                return extendCached( itemset, p.materialize( s ), coverRows( itemset[skip] ), s );
+            }
+        }
+        this.partitionCache.count( false );
+        int       length = k-2;
+        Partition p      = null;
+        while ( length > 0 && (p = this.partitionCache.peek( itemset, length, -1 )) == null ) {
+            length--;
+        }
+        p = ( p == null ) ? new Partition() : new Partition( p.materialize( s ) );
+        for ( int i = length; i < k-1; i++ ) {
+            p.split( coverRows( itemset[i] ), s );
+        }
+        this.partitionCache.put( itemset, k-1, p );
+        return extendCached( itemset, p, coverRows( itemset[k-1] ), s );
+    }
+
+    private double extendCached( int[] itemset, Partition p, int[] rows, Scratch s )
+    {
+        this.partitionCache.put( itemset, new Partition( p, rows ) );
+        return p.splitEntropy( rows, s );
+    }
+
+    // Partition of rows induced by an itemset: rows are in the same block if
+    // they are covered by exactly the same items of the set. Adding an item
+    // splits every block in two, so the entropy after adding an item only
+    // depends on how its cover intersects the blocks.
+    private class Partition
+    {
+        private int[]  block;      // block of every row
+        private int[]  blockSize;
+        private int    numBlocks;  // blocks are never empty
+        private double sumTerms;   // sum of cellTerm( blockSize[b] )
+        private double numCells;   // 2^|itemset|
+        // A lazy partition is parent split by splitRows, see materialize.
+        private Partition parent;
+        private int[]     splitRows;
+
+        // The partition of the empty set.
+        public Partition()
+        {
+            this.block     = new int[ nrow ];
+            this.blockSize = new int[] { nrow };
+            this.numBlocks = 1;
+            this.sumTerms  = cellTerm( nrow );
+            this.numCells  = 1.0;
+        }
+
+        // A copy of p, which must not be lazy.
+        public Partition( Partition p )
+        {
+            copy( p );
+        }
+
+        // A lazy partition that is built from parent when it is first used.
+        public Partition( Partition parent, int[] splitRows )
+        {
+            this.parent    = parent;
+            this.splitRows = splitRows;
+        }
+
+        // Builds a lazy partition. Cached partitions are shared between
+        // threads and are not changed after this.
+        public synchronized Partition materialize( Scratch s )
+        {
+            if ( this.parent != null ) {
+                copy( this.parent.materialize( s ) );
+                split( this.splitRows, s );
+                this.parent    = null;
+                this.splitRows = null;
+            }
+            return this;
+        }
+
+        private void copy( Partition p )
+        {
+            this.block     = p.block.clone();
+            this.blockSize = Arrays.copyOf( p.blockSize, p.numBlocks );
+            this.numBlocks = p.numBlocks;
+            this.sumTerms  = p.sumTerms;
+            this.numCells  = p.numCells;
+        }
+
+        public double entropy()
+        {
+            return calculateEntropy( this.sumTerms, this.numCells, this.numBlocks );
+        }
+
+        // Entropy of the partition after a split by rows, without splitting.
+        public double splitEntropy( int[] rows, Scratch s )
+        {
+            int   numTouched = countInCover( rows, s );
+            int[] inCover    = s.inCover;
+            int[] touched    = s.touched;
+            double sum = this.sumTerms;
+            int nonEmpty = this.numBlocks;
+            for ( int t = 0; t < numTouched; t++ ) {
+                int b = touched[ t ];
+                int c = inCover[ b ];
+                if ( c < this.blockSize[ b ] ) {
+                    sum += cellTerm( c ) + cellTerm( this.blockSize[b] - c ) - cellTerm( this.blockSize[b] );
+                    nonEmpty++;
+                }
+                inCover[ b ] = 0;
+            }
+            return calculateEntropy( sum, 2.0*this.numCells, nonEmpty );
+        }
+
+        // Splits every block by the given rows, which are the cover of an item.
+        public void split( int[] rows, Scratch s )
+        {
+            int   numTouched = countInCover( rows, s );
+            int[] inCover    = s.inCover;
+            int[] touched    = s.touched;
+            // Blocks that are split get a new id for the part inside the cover,
+            // the rest of the block keeps the old id. inCover[b] is reused to
+            // store the new id.
+            for ( int t = 0; t < numTouched; t++ ) {
+                int b = touched[ t ];
+                int c = inCover[ b ];
+                if ( c < this.blockSize[ b ] ) {
+                    this.sumTerms += cellTerm( c ) + cellTerm( this.blockSize[b] - c ) -
+                        cellTerm( this.blockSize[b] );
+                    this.blockSize = ensureCapacity( this.blockSize, this.numBlocks+1 );
+                    this.blockSize[ this.numBlocks ] = c;
+                    this.blockSize[ b ] -= c;
+                    inCover[ b ] = this.numBlocks++;
+                }
+                else {
+                    inCover[ b ] = b;
+                }
+            }
+            for ( int row : rows ) {
+                this.block[ row ] = inCover[ this.block[row] ];
+            }
+            for ( int t = 0; t < numTouched; t++ ) {
+                inCover[ touched[t] ] = 0;
+            }
+            this.numCells *= 2.0;
+        }
+
+        // Counts the rows of every block that are in rows into s.inCover.
+        // Returns the number of blocks with at least one such row, these
+        // blocks are stored in s.touched. The caller must reset inCover of
+        // the touched blocks to zero.
+        private int countInCover( int[] rows, Scratch s )
+        {
+            s.ensureBlocks( this.numBlocks );
+            int[] inCover    = s.inCover;
+            int[] touched    = s.touched;
+            int   numTouched = 0;
+            for ( int row : rows ) {
+                int b = this.block[ row ];
+                if ( inCover[ b ]++ == 0 ) {
+                    touched[ numTouched++ ] = b;
+                }
+            }
+            return numTouched;
+        }
+
+        private int[] ensureCapacity( int[] a, int size )
+        {
+            if ( size <= a.length ) {
+                return a;
+            }
+            return Arrays.copyOf( a, Math.max( size, 2*a.length ) );
+        }
+    }
+
+    // Keeps the partition of rows induced by the base set and evaluates
+    // extensions by one item with a single pass over the cover of the item.
+    private class PartitionOracle extends MarginalGainOracle
+    {
+        private Partition partition;
+
+        public PartitionOracle( int[] base )
+        {
+            super( base, submodularFnc( base ) );
+            this.partition = new Partition();
+            Scratch s = scratch.get();
+            for ( int item : base ) {
+                this.partition.split( coverRows( item ), s );
+            }
+        }
+
+        public double gain( int item )
+        {
+            submCalls.increment();
+            return this.partition.splitEntropy( coverRows( item ), scratch.get() ) -
+                this.partition.entropy();
+        }
+
+        protected double extend( int item )
+        {
+            double before = this.partition.entropy();
+            this.partition.split( coverRows( item ), scratch.get() );
+            return this.partition.entropy() - before;
+        }
+    }
+
+    // Per-thread buffers used by fillCounters. They grow as needed and are
+    // never shrunk.
+    protected static class Scratch
+    {
+        private   int[]    counter     = new int[ 1 ];
+        private   int[]    bucket      = new int[ 0 ];
+        private   long[]   signatures  = new long[ 0 ];
+        private   long[]   sortBuffer  = new long[ 0 ];
+        private   int[]    radixCount  = new int[ 257 ];
+        // per block counts of Partition, zero between uses
+        protected int[]    inCover     = new int[ 1 ];
+        protected int[]    touched     = new int[ 1 ];
+        // parts of a word, see SubgroupSetEvaluatorWordCover
+        protected long[]   part        = new long[ 65 ];
+        protected long[]   nextPart    = new long[ 65 ];
+        protected int[]    pattern     = new int[ 65 ];
+        protected int[]    nextPattern = new int[ 65 ];
+
+        // Returns a buffer of at least size counters, the first size of which are zero.
+        public int[] counter( int size )
+        {
+            if ( this.counter.length < size ) {
+                this.counter = new int[ size ];
+            }
+            else {
+                Arrays.fill( this.counter, 0, size, 0 );
+            }
+            return this.counter;
+        }
+
+        // Returns a buffer of at least size ints, the first size of which are zero.
+        public int[] bucket( int size )
+        {
+            if ( this.bucket.length < size ) {
+                this.bucket = new int[ size ];
+            }
+            else {
+                Arrays.fill( this.bucket, 0, size, 0 );
+            }
+            return this.bucket;
+        }
+
+        // Returns a buffer of at least size longs, the first size of which are zero.
+        public long[] signatures( int size )
+        {
+            if ( this.signatures.length < size ) {
+                this.signatures = new long[ size ];
+            }
+            else {
+                Arrays.fill( this.signatures, 0, size, 0L );
+            }
+            return this.signatures;
+        }
+
+        // Returns a buffer of at least size longs with arbitrary contents.
+        public long[] sortBuffer( int size )
+        {
+            if ( this.sortBuffer.length < size ) {
+                this.sortBuffer = new long[ size ];
+            }
+            return this.sortBuffer;
+        }
+
+        // Makes inCover and touched hold at least numBlocks entries.
+        public void ensureBlocks( int numBlocks )
+        {
+            if ( this.inCover.length < numBlocks ) {
+                int size = Math.max( numBlocks, 2*this.inCover.length );
+                this.inCover = new int[ size ];
+                this.touched = new int[ size ];
+            }
+        }
+    }
+
     // private List<String> loadDescriptors( String stats2File )
     //     throws Exception
     // {
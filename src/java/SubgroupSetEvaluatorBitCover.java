@@ -24,11 +24,13 @@ import java.util.BitSet;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.function.IntConsumer;
 
 public class SubgroupSetEvaluatorBitCover extends SubgroupSetEvaluator
 {
     private BitSet[] bitcovers;
+    private long[][] words;      // bitcovers as words for the kernels
+    private int[][]  coverRows;
+    private Kernels  kernels = Kernels.get();
 
     public SubgroupSetEvaluatorBitCover() {}
 
@@ -68,6 +70,12 @@ public class SubgroupSetEvaluatorBitCover extends SubgroupSetEvaluator
             // origItem has been initialised in super.init
             this.bitcovers[ i ] = bc[ this.origItem[i] ];
         }
+        this.coverRows = new int[ this.bitcovers.length ][];
+        this.words     = new long[ this.bitcovers.length ][];
+        for ( int i = 0; i < this.bitcovers.length; i++ ) {
+            this.coverRows[ i ] = this.bitcovers[ i ].stream().toArray();
+            this.words[ i ]     = this.bitcovers[ i ].toLongArray();
+        }
     }
 
     protected int countOnes( int item )
@@ -75,24 +83,18 @@ public class SubgroupSetEvaluatorBitCover extends SubgroupSetEvaluator
         return this.bitcovers[item].cardinality();
     }
     
-    protected int[] fillCounters( int[] itemset )
+    protected void fillCounters( int[] itemset, int[] counter, int offset, Scratch s )
     {
-        int[] bucket  = new int[ this.nrow ];
-        int[] shift   = new int[1];
-        for( int i = 0; i < itemset.length; i++ ) {
-            shift[0] = i;
-            this.bitcovers[ itemset[i] ].stream().forEach( new IntConsumer() {
-                    public void accept( int row ) {
-                        bucket[row] |= (1 << shift[0]);
-                    }
-                } );
-        }
-        
-        int[] counter = new int[ 1 << itemset.length ];
-        for ( int i = 0; i < bucket.length; i++ ) {
-            counter[ bucket[i] ]++;
+        int[] bucket = s.bucket( this.nrow );
+        for ( int i = 0; i < itemset.length; i++ ) {
+            this.kernels.orBits( bucket, this.words[ itemset[i] ], this.nrow, 1 << i );
         }
-        return counter;
+        this.kernels.histogram( bucket, this.nrow, counter, offset, 1 << itemset.length );
+    }
+
+    protected int[] coverRows( int item )
+    {
+        return this.coverRows[ item ];
     }
 
     private BitSet[] loadBitCovers( String subsetsFile )
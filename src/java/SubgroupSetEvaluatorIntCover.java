@@ -29,6 +29,12 @@ import java.util.Map;
 public class SubgroupSetEvaluatorIntCover extends SubgroupSetEvaluator
 {
     private IntMatrix covers;
+
+    // number of rows of a cover kept in the cache by the batched count
+    private static final int BLOCK_ROWS = 4096;
+
+    private int[][]   coverRows;
+    private Kernels   kernels = Kernels.get();
     
     public SubgroupSetEvaluatorIntCover() {}
 
@@ -41,6 +47,18 @@ public class SubgroupSetEvaluatorIntCover extends SubgroupSetEvaluator
 
         // Don't forget to set this.nrow!
         this.nrow = this.covers.nrow();
+
+        this.coverRows = new int[ this.covers.ncol() ][];
+        for ( int item = 0; item < this.coverRows.length; item++ ) {
+            int[] rows = new int[ countOnes( item ) ];
+            int   e    = 0;
+            for ( int row = 0; row < this.nrow; row++ ) {
+                if ( this.covers.get( row, item ) == 1 ) {
+                    rows[ e++ ] = row;
+                }
+            }
+            this.coverRows[ item ] = rows;
+        }
     }
 
     protected int countOnes( int item )
@@ -52,17 +70,42 @@ public class SubgroupSetEvaluatorIntCover extends SubgroupSetEvaluator
         return ones;
     }
 
-    protected int[] fillCounters( int[] itemset )
+    // The pattern of every row is built one column at a time, the columns of
+    // covers are contiguous.
+    protected void fillCounters( int[] itemset, int[] counter, int offset, Scratch s )
+    {
+        int   nrow   = this.covers.nrow();
+        int[] data   = this.covers.data();
+        int[] bucket = s.bucket( nrow );
+        for ( int j = 0; j < itemset.length; j++ ) {
+            this.kernels.orShifted( bucket, data, itemset[j]*nrow, nrow, j );
+        }
+        this.kernels.histogram( bucket, nrow, counter, offset, 1 << itemset.length );
+    }
+
+    // The itemsets are counted one block of rows at a time, so that the
+    // block of a cover stays in the cache for all itemsets that contain the
+    // item.
+    protected void fillCounters( int[][] itemsets, int n, int[] counter, int[] offset, Scratch s )
     {
-        int[] counter = new int[ 1 << itemset.length ];
-        for ( int row = 0; row < this.covers.nrow(); row++ ) {
-            int bucket = 0;
-            for ( int j = 0; j < itemset.length; j++ ) {
-                bucket |= this.covers.get( row, itemset[j] ) << j;
+        int   nrow = this.covers.nrow();
+        int[] data = this.covers.data();
+        for ( int from = 0; from < nrow; from += BLOCK_ROWS ) {
+            int to = Math.min( from + BLOCK_ROWS, nrow );
+            for ( int i = 0; i < n; i++ ) {
+                int[] itemset = itemsets[ i ];
+                int[] bucket  = s.bucket( to - from );
+                for ( int j = 0; j < itemset.length; j++ ) {
+                    this.kernels.orShifted( bucket, data, itemset[j]*nrow + from, to - from, j );
+                }
+                this.kernels.histogram( bucket, to - from, counter, offset[i], 1 << itemset.length );
             }
-            counter[ bucket ]++;
         }
-        return counter;
+    }
+
+    protected int[] coverRows( int item )
+    {
+        return this.coverRows[ item ];
     }
 
     private IntMatrix loadCovers( String subsetsFile )
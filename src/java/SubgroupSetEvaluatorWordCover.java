@@ -0,0 +1,163 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Subgroup covers packed in words of 64 rows. The joint counts of an itemset
+// are computed one word at a time: the rows of the word are split by the
+// cover of every item in turn using AND/ANDNOT, and the size of every final
+// part is a popcount. Individual rows are never visited.
+public class SubgroupSetEvaluatorWordCover extends SubgroupSetEvaluator
+{
+    private long[][] words;      // words[item][w] holds rows 64*w .. 64*w+63
+    private long     lastMask;   // rows of the last word that exist
+    private int[]    ones;       // cover size of every item
+    private int[][]  coverRows;
+
+    // number of words of a cover kept in the cache by the batched count
+    private static final int BLOCK_WORDS = 256;
+
+    public SubgroupSetEvaluatorWordCover() {}
+
+    public void init( Map<String,Object> options )
+        throws Exception
+    {
+        super.init( options );
+        // Load covers and also set this.nrow:
+        long[][] w = loadWordCovers( (String)options.get( "c" ) );
+        this.words = new long[ w.length ][];
+        for ( int i = 0; i < w.length; i++ ) {
+            // origItem has been initialised in super.init
+            this.words[ i ] = w[ this.origItem[i] ];
+        }
+        this.lastMask = ( this.nrow % 64 == 0 ) ? -1L : ( (1L << (this.nrow % 64)) - 1 );
+        this.ones      = new int[ this.words.length ];
+        this.coverRows = new int[ this.words.length ][];
+        for ( int item = 0; item < this.words.length; item++ ) {
+            for ( long word : this.words[ item ] ) {
+                this.ones[ item ] += Long.bitCount( word );
+            }
+            int[] rows = new int[ this.ones[item] ];
+            int   e    = 0;
+            for ( int i = 0; i < this.words[item].length; i++ ) {
+                for ( long word = this.words[item][i]; word != 0; word &= word - 1 ) {
+                    rows[ e++ ] = 64*i + Long.numberOfTrailingZeros( word );
+                }
+            }
+            this.coverRows[ item ] = rows;
+        }
+    }
+
+    protected int countOnes( int item )
+    {
+        return this.ones[ item ];
+    }
+
+    protected void fillCounters( int[] itemset, int[] counter, int offset, Scratch s )
+    {
+        countWords( itemset, 0, ( this.nrow + 63 )/64, counter, offset, s );
+    }
+
+    // The itemsets are counted one block of words at a time, so that the
+    // block of a cover stays in the cache for all itemsets that contain the
+    // item.
+    protected void fillCounters( int[][] itemsets, int n, int[] counter, int[] offset, Scratch s )
+    {
+        int numWords = ( this.nrow + 63 )/64;
+        for ( int from = 0; from < numWords; from += BLOCK_WORDS ) {
+            int to = Math.min( from + BLOCK_WORDS, numWords );
+            for ( int i = 0; i < n; i++ ) {
+                countWords( itemsets[i], from, to, counter, offset[i], s );
+            }
+        }
+    }
+
+    // Adds the patterns of itemset in words from..to-1 to counter[ offset.. ].
+    private void countWords( int[] itemset, int from, int to, int[] counter, int offset, Scratch s )
+    {
+        int numWords = ( this.nrow + 63 )/64;
+        // The rows of a word are partitioned into at most 64 non-empty parts,
+        // part[p] holding the rows whose pattern over the items so far is
+        // pattern[p]. Empty parts are dropped as soon as they appear. The
+        // buffers have one extra slot for the branch-free split below.
+        long[] part        = s.part;
+        int[]  pattern     = s.pattern;
+        long[] nextPart    = s.nextPart;
+        int[]  nextPattern = s.nextPattern;
+        for ( int w = from; w < to; w++ ) {
+            part[ 0 ]    = ( w == numWords-1 ) ? this.lastMask : -1L;
+            pattern[ 0 ] = 0;
+            int numParts = 1;
+            for ( int j = 0; j < itemset.length; j++ ) {
+                long c   = this.words[ itemset[j] ][ w ];
+                int  bit = 1 << j;
+                int  n   = 0;
+                for ( int p = 0; p < numParts; p++ ) {
+                    // Both halves are always written, and the slot is kept
+                    // only if the half is not empty. This avoids branches
+                    // that depend on the data.
+                    long in  = part[ p ] & c;
+                    long out = part[ p ] & ~c;
+                    nextPart[ n ]    = in;
+                    nextPattern[ n ] = pattern[ p ] | bit;
+                    n += (int)( (in | -in) >>> 63 );
+                    nextPart[ n ]    = out;
+                    nextPattern[ n ] = pattern[ p ];
+                    n += (int)( (out | -out) >>> 63 );
+                }
+                long[] tp = part;    part    = nextPart;    nextPart    = tp;
+                int[]  tq = pattern; pattern = nextPattern; nextPattern = tq;
+                numParts = n;
+            }
+            for ( int p = 0; p < numParts; p++ ) {
+                counter[ offset + pattern[p] ] += Long.bitCount( part[p] );
+            }
+        }
+    }
+
+    protected int[] coverRows( int item )
+    {
+        return this.coverRows[ item ];
+    }
+
+    // Reads covers in the same format as the other cover evaluators, one
+    // subgroup per line as a string of 0s and 1s, straight into words.
+    private long[][] loadWordCovers( String subsetsFile )
+        throws Exception
+    {
+        List<long[]> tmp = new ArrayList<>();
+        for ( String cover : Utils.fileLineIterator( subsetsFile, false ) ) {
+            cover = cover.trim();
+            this.nrow = cover.length();
+            long[] w = new long[ (cover.length() + 63)/64 ];
+            for ( int i = 0; i < cover.length(); i++ ) {
+                if ( cover.charAt( i ) == '1' ) {
+                    w[ i >>> 6 ] |= 1L << i;
+                }
+            }
+            tmp.add( w );
+        }
+        return tmp.toArray( new long[ tmp.size() ][] );
+    }
+}
@@ -0,0 +1,198 @@
+// The MIT License (MIT)
+
+// Copyright (c) 2017 Antti Ukkonen
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Kernels with the Vector API, using the widest vectors of the machine. See
+// Kernels for how to compile and enable these. Kernels that were not faster
+// than the scalar code in KernelBenchmark are not overridden.
+//
+// There is no lane-wise popcount in the JDK 17 Vector API, so the bits of a
+// vector are counted with the usual shift-and-add steps.
+public class VectorKernels extends Kernels
+{
+    private static final VectorSpecies<Long>    LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS  = IntVector.SPECIES_PREFERRED;
+    // words with fewer bits are not worth a vector op per chunk
+    private static final int SPARSE_WORD = 4;
+    // lane i holds 1 << i
+    private static final IntVector LANE_BITS = IntVector.broadcast( INTS, 1 )
+        .lanewise( VectorOperators.LSHL, IntVector.zero( INTS ).addIndex( 1 ) );
+
+    public VectorKernels()
+    {
+        // Fail here rather than on the first call if the module is missing.
+        LongVector.zero( LONGS );
+    }
+
+    public String name()
+    {
+        return String.format( "vector kernels, %d bit vectors", LONGS.vectorBitSize() );
+    }
+
+    public long orCount( long[][] columns, int n, int from, int to )
+    {
+        if ( n == 0 ) {
+            return 0;
+        }
+        LongVector acc   = LongVector.zero( LONGS );
+        int        bound = from + LONGS.loopBound( to - from );
+        int        w     = from;
+        for ( ; w < bound; w += LONGS.length() ) {
+            LongVector word = LongVector.fromArray( LONGS, columns[0], w );
+            for ( int j = 1; j < n; j++ ) {
+                word = word.or( LongVector.fromArray( LONGS, columns[j], w ) );
+            }
+            acc = acc.add( bitCount( word ) );
+        }
+        return acc.reduceLanes( VectorOperators.ADD ) + super.orCount( columns, n, w, to );
+    }
+
+    public long orInto( long[] dst, long[][] columns, int n, int numWords )
+    {
+        if ( n == 0 ) {
+            return 0;
+        }
+        LongVector acc   = LongVector.zero( LONGS );
+        int        bound = LONGS.loopBound( numWords );
+        int        w     = 0;
+        for ( ; w < bound; w += LONGS.length() ) {
+            LongVector word = LongVector.fromArray( LONGS, columns[0], w );
+            for ( int j = 1; j < n; j++ ) {
+                word = word.or( LongVector.fromArray( LONGS, columns[j], w ) );
+            }
+            word.intoArray( dst, w );
+            acc = acc.add( bitCount( word ) );
+        }
+        long count = acc.reduceLanes( VectorOperators.ADD );
+        for ( ; w < numWords; w++ ) {
+            long word = 0L;
+            for ( int j = 0; j < n; j++ ) {
+                word |= columns[ j ][ w ];
+            }
+            dst[ w ] = word;
+            count += Long.bitCount( word );
+        }
+        return count;
+    }
+
+    public long andNotCount( long[] a, long[] b, int numWords )
+    {
+        LongVector acc   = LongVector.zero( LONGS );
+        int        bound = LONGS.loopBound( numWords );
+        int        w     = 0;
+        for ( ; w < bound; w += LONGS.length() ) {
+            LongVector va = LongVector.fromArray( LONGS, a, w );
+            LongVector vb = LongVector.fromArray( LONGS, b, w );
+            acc = acc.add( bitCount( va.and( vb.not() ) ) );
+        }
+        long count = acc.reduceLanes( VectorOperators.ADD );
+        for ( ; w < numWords; w++ ) {
+            count += Long.bitCount( a[w] & ~b[w] );
+        }
+        return count;
+    }
+
+    public long orCountNew( long[] a, long[] b, int numWords )
+    {
+        LongVector acc   = LongVector.zero( LONGS );
+        int        bound = LONGS.loopBound( numWords );
+        int        w     = 0;
+        for ( ; w < bound; w += LONGS.length() ) {
+            LongVector va = LongVector.fromArray( LONGS, a, w );
+            LongVector vb = LongVector.fromArray( LONGS, b, w );
+            acc = acc.add( bitCount( va.and( vb.not() ) ) );
+            va.or( vb ).intoArray( b, w );
+        }
+        long count = acc.reduceLanes( VectorOperators.ADD );
+        for ( ; w < numWords; w++ ) {
+            count += Long.bitCount( a[w] & ~b[w] );
+            b[ w ] |= a[ w ];
+        }
+        return count;
+    }
+
+    // Every word is split into chunks of one vector of ints. The bits of a
+    // chunk are spread to the lanes by AND with the bit of every lane, and
+    // the lanes with a bit get the OR. Words with few bits are done bit by
+    // bit, as in the scalar code.
+    public void orBits( int[] bucket, long[] words, int length, int bit )
+    {
+        int step      = INTS.length();
+        int fullWords = Math.min( words.length, length/64 );
+        for ( int w = 0; w < fullWords; w++ ) {
+            long word = words[ w ];
+            if ( Long.bitCount( word ) < SPARSE_WORD ) {
+                for ( ; word != 0L; word &= word - 1 ) {
+                    bucket[ 64*w + Long.numberOfTrailingZeros( word ) ] |= bit;
+                }
+                continue;
+            }
+            for ( int i = 0; i < 64; i += step ) {
+                VectorMask<Integer> m = IntVector.broadcast( INTS, (int)(word >>> i) )
+                    .and( LANE_BITS )
+                    .compare( VectorOperators.NE, 0 );
+                IntVector.fromArray( INTS, bucket, 64*w + i )
+                    .lanewise( VectorOperators.OR, bit, m )
+                    .intoArray( bucket, 64*w + i );
+            }
+        }
+        int end = (int)Math.min( length, 64L*words.length );
+        for ( int i = 64*fullWords; i < end; i++ ) {
+            if ( (words[ i >>> 6 ] & (1L << i)) != 0 ) {
+                bucket[ i ] |= bit;
+            }
+        }
+    }
+
+    public void orShifted( int[] bucket, int[] src, int srcOffset, int length, int shift )
+    {
+        int bound = INTS.loopBound( length );
+        int i     = 0;
+        for ( ; i < bound; i += INTS.length() ) {
+            IntVector.fromArray( INTS, src, srcOffset + i )
+                .lanewise( VectorOperators.LSHL, shift )
+                .or( IntVector.fromArray( INTS, bucket, i ) )
+                .intoArray( bucket, i );
+        }
+        for ( ; i < length; i++ ) {
+            bucket[ i ] |= src[ srcOffset + i ] << shift;
+        }
+    }
+
+    // Number of bits set in every lane of x.
+    private static LongVector bitCount( LongVector x )
+    {
+        x = x.sub( x.lanewise( VectorOperators.LSHR, 1 ).and( 0x5555555555555555L ) );
+        x = x.and( 0x3333333333333333L )
+             .add( x.lanewise( VectorOperators.LSHR, 2 ).and( 0x3333333333333333L ) );
+        x = x.add( x.lanewise( VectorOperators.LSHR, 4 ) ).and( 0x0f0f0f0f0f0f0f0fL );
+        x = x.add( x.lanewise( VectorOperators.LSHR, 8 ) );
+        x = x.add( x.lanewise( VectorOperators.LSHR, 16 ) );
+        x = x.add( x.lanewise( VectorOperators.LSHR, 32 ) );
+        return x.and( 0x7fL );
+    }
+}